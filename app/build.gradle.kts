@@ -41,6 +41,17 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    testOptions {
+        // android.util.Log calls in code under test return 0 instead of throwing.
+        unitTests.isReturnDefaultValues = true
+        unitTests.all {
+            // Benchmarks are skipped unless run with e.g. ./gradlew test -Dbenchmark=true
+            System.getProperties().stringPropertyNames()
+                .filter { name -> name.startsWith("benchmark") }
+                .forEach { name -> it.systemProperty(name, System.getProperty(name)) }
+        }
+    }
 }
 
 dependencies {
@@ -50,11 +61,15 @@ dependencies {
     implementation("com.airbnb.android:lottie-compose:6.3.0")
     implementation("androidx.navigation:navigation-compose:2.7.7")
     implementation("com.squareup.retrofit2:retrofit:2.9.0")
-    implementation("com.squareup.retrofit2:converter-gson:2.9.0")
-    implementation("com.squareup.okhttp3:logging-interceptor:4.10.0")
+    implementation("com.google.code.gson:gson:2.8.9")
+    implementation("com.squareup.okhttp3:logging-interceptor:4.11.0")
+    implementation("com.squareup.okhttp3:okhttp-brotli:4.11.0")
     implementation("com.journeyapps:zxing-android-embedded:4.3.0")
     implementation("com.google.zxing:core:3.4.1")
+    implementation("androidx.work:work-runtime:2.9.1")
     implementation ("com.journeyapps:zxing-android-embedded:4.3.0")
+    testImplementation(libs.junit)
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.11.0")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     implementation(libs.material)
@@ -0,0 +1,79 @@
+package com.example.learning;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * Shared by all downloads: every background body read goes through one
+ * {@link TokenBucket}, so the cap holds for the sum of concurrent transfers. Downloads at
+ * {@link DownloadScheduler.Priority#PLAYBACK} bypass the bucket, since the screen is
+ * waiting for them. The cap follows {@link BandwidthPolicy} and is re-evaluated once a
+ * minute, so a long transfer speeds up when the night window begins. Achieved throughput
+ * is measured after throttling.
+ */
+public class BandwidthLimiter {
+
+    private static final long POLICY_CHECK_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final BandwidthPolicy policy;
+    private final TokenBucket bucket;
+    private final ThroughputMeter meter = new ThroughputMeter();
+    private volatile long policyCheckedAt;
+
+    public BandwidthLimiter(BandwidthPolicy policy) {
+        this.policy = policy;
+        this.bucket = new TokenBucket(policy.rateAt(Calendar.getInstance()));
+        this.policyCheckedAt = System.nanoTime();
+    }
+
+    public BandwidthPolicy getPolicy() {
+        return policy;
+    }
+
+    /** Current cap in bytes per second; 0 is unlimited. */
+    public long getRate() {
+        return bucket.getRate();
+    }
+
+    /** Download rate achieved over the last few seconds, in bytes per second. */
+    public long getThroughput() {
+        return meter.getBytesPerSecond();
+    }
+
+    public long getTotalBytes() {
+        return meter.getTotalBytes();
+    }
+
+    /**
+     * Limits {@code source} unless {@code task} runs at playback priority. The priority is
+     * read on every chunk, so a prefetch promoted to playback stops waiting at once.
+     */
+    public Source throttle(Source source, DownloadScheduler.Task task) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    if (task == null || task.getPriority() != DownloadScheduler.Priority.PLAYBACK) {
+                        refreshRate();
+                        bucket.acquire(read);
+                    }
+                    meter.record(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    private void refreshRate() {
+        long now = System.nanoTime();
+        if (now - policyCheckedAt < POLICY_CHECK_INTERVAL_NANOS) return;
+        policyCheckedAt = now;
+        bucket.setRate(policy.rateAt(Calendar.getInstance()));
+    }
+}
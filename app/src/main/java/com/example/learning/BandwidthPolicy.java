@@ -0,0 +1,71 @@
+package com.example.learning;
+
+import java.util.Calendar;
+import java.util.Properties;
+
+/**
+ * When media may use the store's network and how much of it. The day runs from
+ * {@code bandwidth.nightEndHour} to {@code bandwidth.nightStartHour}; the rest is
+ * off-peak. Each window has its own cap in KB/s, 0 meaning unlimited. With
+ * {@code prefetch.deferToNight}, background prefetch waits for off-peak hours while
+ * the item that is about to play is still fetched right away.
+ */
+public class BandwidthPolicy {
+
+    public static final BandwidthPolicy UNLIMITED = new BandwidthPolicy(0, 0, 0, 0, false);
+
+    private final long dayBytesPerSecond;
+    private final long nightBytesPerSecond;
+    private final int nightStartHour;
+    private final int nightEndHour;
+    private final boolean deferPrefetch;
+
+    public BandwidthPolicy(long dayBytesPerSecond, long nightBytesPerSecond,
+                           int nightStartHour, int nightEndHour, boolean deferPrefetch) {
+        this.dayBytesPerSecond = Math.max(0, dayBytesPerSecond);
+        this.nightBytesPerSecond = Math.max(0, nightBytesPerSecond);
+        this.nightStartHour = Math.floorMod(nightStartHour, 24);
+        this.nightEndHour = Math.floorMod(nightEndHour, 24);
+        this.deferPrefetch = deferPrefetch;
+    }
+
+    public static BandwidthPolicy fromProperties(Properties properties) {
+        return new BandwidthPolicy(
+                1024 * Long.parseLong(properties.getProperty("bandwidth.dayKBps", "0").trim()),
+                1024 * Long.parseLong(properties.getProperty("bandwidth.nightKBps", "0").trim()),
+                Integer.parseInt(properties.getProperty("bandwidth.nightStartHour", "22").trim()),
+                Integer.parseInt(properties.getProperty("bandwidth.nightEndHour", "6").trim()),
+                Boolean.parseBoolean(properties.getProperty("prefetch.deferToNight", "false").trim()));
+    }
+
+    public boolean isOffPeak(Calendar now) {
+        int hour = now.get(Calendar.HOUR_OF_DAY);
+        if (nightStartHour == nightEndHour) return false;
+        if (nightStartHour < nightEndHour) return hour >= nightStartHour && hour < nightEndHour;
+        return hour >= nightStartHour || hour < nightEndHour;
+    }
+
+    /** Download cap at {@code now} in bytes per second; 0 is unlimited. */
+    public long rateAt(Calendar now) {
+        return isOffPeak(now) ? nightBytesPerSecond : dayBytesPerSecond;
+    }
+
+    /** Whether background prefetch started at {@code now} should wait for off-peak hours. */
+    public boolean shouldDeferPrefetch(Calendar now) {
+        return deferPrefetch && nightStartHour != nightEndHour && !isOffPeak(now);
+    }
+
+    public long millisUntilOffPeak(Calendar now) {
+        return isOffPeak(now) ? 0 : millisUntilHour(nightStartHour, now);
+    }
+
+    static long millisUntilHour(int hour, Calendar now) {
+        Calendar next = (Calendar) now.clone();
+        next.set(Calendar.HOUR_OF_DAY, hour);
+        next.set(Calendar.MINUTE, 0);
+        next.set(Calendar.SECOND, 0);
+        next.set(Calendar.MILLISECOND, 0);
+        if (!next.after(now)) next.add(Calendar.DAY_OF_MONTH, 1);
+        return next.getTimeInMillis() - now.getTimeInMillis();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.learning;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory view of the media cache directory. Entries are kept in least-recently-used
+ * order so eviction can walk them from the front, and the total size is maintained
+ * incrementally so it can be read without touching the filesystem.
+ */
+public class CacheIndex {
+
+    public static class Entry {
+        private final String name;
+        private long size;
+        private long lastAccess;
+        private boolean pinned;
+
+        Entry(String name, long size, long lastAccess) {
+            this.name = name;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        public String getName() { return name; }
+        public long getSize() { return size; }
+        public long getLastAccess() { return lastAccess; }
+        public boolean isPinned() { return pinned; }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> pinnedNames = new HashSet<>();
+    private volatile long totalBytes;
+
+    public synchronized void put(String name, long size, long lastAccess) {
+        Entry previous = entries.remove(name);
+        if (previous != null) totalBytes -= previous.size;
+
+        Entry entry = new Entry(name, size, lastAccess);
+        entry.pinned = pinnedNames.contains(name);
+        entries.put(name, entry);
+        totalBytes += size;
+    }
+
+    public synchronized void touch(String name, long now) {
+        Entry entry = entries.get(name);
+        if (entry != null) entry.lastAccess = now;
+    }
+
+    /** Changes the accounted size of an entry without affecting its LRU position. */
+    public synchronized void setSize(String name, long size) {
+        for (Entry entry : entries.values()) {
+            if (entry.name.equals(name)) {
+                totalBytes += size - entry.size;
+                entry.size = size;
+                return;
+            }
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) totalBytes -= entry.size;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /** Replaces the pinned set; pinned entries are never returned as eviction candidates. */
+    public synchronized void setPinned(Collection<String> names) {
+        pinnedNames.clear();
+        pinnedNames.addAll(names);
+        for (Entry entry : entries.values()) {
+            entry.pinned = pinnedNames.contains(entry.name);
+        }
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the least recently used unpinned entry, or {@code null} when the cache fits in
+     * {@code maxBytes} or only pinned entries remain. Callers evict one entry at a time.
+     */
+    public synchronized Entry nextEvictionCandidate(long maxBytes) {
+        if (totalBytes <= maxBytes) return null;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.pinned) return entry;
+        }
+        return null;
+    }
+
+    public synchronized List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+}
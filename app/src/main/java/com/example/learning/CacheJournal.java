@@ -0,0 +1,258 @@
+package com.example.learning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only, line based journal of the media cache manifests. It is read once at
+ * startup so that cache lookups never have to stat files or parse sidecars. Each line
+ * is one tab separated record:
+ * <pre>
+ * PUT  url blob size sha256 contentType etag lastModified storedAt lastAccess
+ *      display displaySize width height durationMs
+ * DEL  url
+ * </pre>
+ * A torn last line (crash during append) is ignored and cut off, so the next append starts
+ * on a fresh line; anything else that does not parse makes {@link #read()} fail so the
+ * caller can rebuild from the sidecars.
+ */
+public class CacheJournal {
+
+    // Version 1 journals lack the derivative fields and are rebuilt from the sidecars.
+    private static final String HEADER = "media-cache-journal 2";
+    private static final String PUT = "PUT";
+    private static final String DEL = "DEL";
+
+    public static class Record {
+        private final MediaCacheEntry entry;
+        private final long lastAccess;
+
+        public Record(MediaCacheEntry entry, long lastAccess) {
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+
+        public MediaCacheEntry getEntry() { return entry; }
+        public long getLastAccess() { return lastAccess; }
+    }
+
+    public static class CorruptJournalException extends IOException {
+        public CorruptJournalException(String message) {
+            super(message);
+        }
+    }
+
+    private final File file;
+    private Writer writer;
+    private int recordCount;
+
+    public CacheJournal(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Lines written since the last rewrite; used to decide when to compact. */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /** Replays the journal; the last record for a URL wins. */
+    public synchronized Map<String, Record> read() throws IOException {
+        if (!file.exists()) throw new CorruptJournalException("No journal");
+
+        byte[] bytes = readFully(file);
+        int complete = lastLineEnd(bytes);
+        if (complete == 0) throw new CorruptJournalException("Bad journal header");
+        String[] lines = new String(bytes, 0, complete, StandardCharsets.UTF_8).split("\n", -1);
+        if (!HEADER.equals(lines[0])) {
+            throw new CorruptJournalException("Bad journal header");
+        }
+
+        Map<String, Record> records = new LinkedHashMap<>();
+        // Only complete lines were decoded, so the final element is always "".
+        for (int i = 1; i < lines.length - 1; i++) {
+            String[] fields = lines[i].split("\t", -1);
+            if (PUT.equals(fields[0]) && fields.length == 15) {
+                try {
+                    MediaCacheEntry entry = new MediaCacheEntry(
+                            unescape(fields[1]), unescape(fields[2]),
+                            Long.parseLong(fields[3]), fields[4],
+                            unescape(fields[5]), unescape(fields[6]), unescape(fields[7]),
+                            Long.parseLong(fields[8]),
+                            unescape(fields[10]), Long.parseLong(fields[11]),
+                            Integer.parseInt(fields[12]), Integer.parseInt(fields[13]),
+                            Long.parseLong(fields[14]));
+                    if (entry.getUrl() == null || entry.getBlobName() == null) {
+                        throw new CorruptJournalException("Bad record on line " + (i + 1));
+                    }
+                    records.remove(entry.getUrl());
+                    records.put(entry.getUrl(), new Record(entry, Long.parseLong(fields[9])));
+                } catch (NumberFormatException e) {
+                    throw new CorruptJournalException("Bad record on line " + (i + 1));
+                }
+            } else if (DEL.equals(fields[0]) && fields.length == 2) {
+                records.remove(unescape(fields[1]));
+            } else {
+                throw new CorruptJournalException("Bad record on line " + (i + 1));
+            }
+        }
+        if (complete < bytes.length) truncate(complete);
+        recordCount = Math.max(0, lines.length - 2);
+        return records;
+    }
+
+    public synchronized void appendPut(MediaCacheEntry entry, long lastAccess) throws IOException {
+        append(putLine(entry, lastAccess));
+    }
+
+    public synchronized void appendRemove(String url) throws IOException {
+        append(DEL + "\t" + escape(url) + "\n");
+    }
+
+    /** Atomically replaces the journal with one PUT per record. */
+    public synchronized void rewrite(Collection<Record> records) throws IOException {
+        closeWriter();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmp);
+             Writer out = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (Record record : records) {
+                out.write(putLine(record.entry, record.lastAccess));
+            }
+            out.flush();
+            output.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getName());
+        }
+        recordCount = records.size();
+    }
+
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    private void append(String line) throws IOException {
+        if (writer == null) {
+            writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+        }
+        writer.write(line);
+        writer.flush();
+        recordCount++;
+    }
+
+    /** Drops a torn append; otherwise the next record would be joined onto it. */
+    private void truncate(long length) throws IOException {
+        closeWriter();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(length);
+            output.getFD().sync();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // Nothing buffered is lost: every append is flushed.
+        }
+        writer = null;
+    }
+
+    private static String putLine(MediaCacheEntry entry, long lastAccess) {
+        return PUT
+                + "\t" + escape(entry.getUrl())
+                + "\t" + escape(entry.getBlobName())
+                + "\t" + entry.getSize()
+                + "\t" + entry.getSha256()
+                + "\t" + escape(entry.getContentType())
+                + "\t" + escape(entry.getEtag())
+                + "\t" + escape(entry.getLastModified())
+                + "\t" + entry.getStoredAt()
+                + "\t" + lastAccess
+                + "\t" + escape(entry.getDisplayName())
+                + "\t" + entry.getDisplaySize()
+                + "\t" + entry.getWidth()
+                + "\t" + entry.getHeight()
+                + "\t" + entry.getDurationMs()
+                + "\n";
+    }
+
+    private static String escape(String value) {
+        if (value == null) return "";
+        StringBuilder out = new StringBuilder(value.length() + 1).append('=');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Values are prefixed with '=' so that an empty field can stand for {@code null}. */
+    private static String unescape(String field) throws CorruptJournalException {
+        if (field.isEmpty()) return null;
+        if (field.charAt(0) != '=') throw new CorruptJournalException("Bad field");
+
+        StringBuilder out = new StringBuilder(field.length());
+        for (int i = 1; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (++i == field.length()) throw new CorruptJournalException("Bad escape");
+            char next = field.charAt(i);
+            switch (next) {
+                case '\\': out.append('\\'); break;
+                case 't': out.append('\t'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                default: throw new CorruptJournalException("Bad escape");
+            }
+        }
+        return out.toString();
+    }
+
+    /** Length of {@code bytes} up to and including the last newline. */
+    private static int lastLineEnd(byte[] bytes) {
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') end--;
+        return end;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.min(file.length(), Integer.MAX_VALUE));
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.learning;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/** SHA-256 based naming for media cache files. */
+public final class CacheKeys {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private CacheKeys() {}
+
+    /** Stable key for a URL; used to name its manifest sidecar and in-progress download. */
+    public static String urlKey(String url) {
+        MessageDigest digest = newSha256();
+        return toHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    /**
+     * File extension for a stored blob. The server's Content-Type wins; the URL is only
+     * consulted when the type is missing or generic.
+     */
+    public static String extensionFor(String contentType, String url) {
+        if (contentType != null) {
+            String mime = contentType.toLowerCase(Locale.ROOT);
+            int semicolon = mime.indexOf(';');
+            if (semicolon >= 0) mime = mime.substring(0, semicolon);
+            switch (mime.trim()) {
+                case "image/jpeg":
+                case "image/jpg": return ".jpg";
+                case "image/png": return ".png";
+                case "image/webp": return ".webp";
+                case "image/gif": return ".gif";
+                case "image/bmp": return ".bmp";
+                case "video/mp4": return ".mp4";
+                case "video/webm": return ".webm";
+                case "video/quicktime": return ".mov";
+                case "video/x-msvideo": return ".avi";
+                case "video/x-matroska": return ".mkv";
+                case "video/3gpp": return ".3gp";
+                default: break;
+            }
+        }
+
+        String path = url.toLowerCase(Locale.ROOT);
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        String[] known = {".mp4", ".webm", ".avi", ".mov", ".mkv", ".jpg", ".jpeg", ".png", ".webp", ".gif"};
+        for (String extension : known) {
+            if (path.endsWith(extension)) return extension.equals(".jpeg") ? ".jpg" : extension;
+        }
+        return ".bin";
+    }
+}
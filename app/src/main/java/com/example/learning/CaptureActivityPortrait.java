@@ -1,7 +0,0 @@
-package com.example.learning;
-
-import com.journeyapps.barcodescanner.CaptureActivity;
-
-public class CaptureActivityPortrait extends CaptureActivity {
-
-}
\ No newline at end of file
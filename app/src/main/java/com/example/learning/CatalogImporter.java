@@ -0,0 +1,300 @@
+package com.example.learning;
+
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Streams a price file into the {@link ProductCatalog} in batches.
+ * <p>
+ * Two formats are read, told apart by the first character:
+ * <ul>
+ *   <li>CSV with a header row naming the columns {@code barcode}, {@code price} and,
+ *   optionally, {@code name} and {@code version}. Fields are separated by commas, or by
+ *   semicolons if the header has no comma, so spreadsheets that write decimal commas
+ *   work. Quoted fields may contain separators and doubled quotes.</li>
+ *   <li>A JSON array of {@code {"barcode", "name", "price", "version"}} objects.</li>
+ * </ul>
+ * Every row carries a version, and a row is only written if it is newer than what the
+ * catalog has for its barcode, so a full feed imported again, or a delta feed of the
+ * night's price changes, only touches rows that changed. Versions are compared as numbers;
+ * feeds should use the time of the price change in epoch milliseconds, which is also what
+ * products entered by hand get. Rows without a version are stamped with the import time. A
+ * row whose price and name match the catalog is never written, whatever its version, so a
+ * full feed without versions also leaves unchanged rows alone. A row without a name keeps
+ * the name the catalog already has.
+ * <p>
+ * Rows that cannot be read are counted and skipped. Nothing here holds the catalog lock
+ * except {@link ProductCatalog#apply}, so lookups run while an import is in progress.
+ */
+public class CatalogImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int LOGGED_REJECTS = 10;
+
+    public interface ProgressListener {
+        /** Called after every batch on the importing thread. */
+        void onProgress(int rows, int written);
+    }
+
+    public static final class Result {
+        private final int rows;
+        private final int written;
+        private final int rejected;
+        private final long elapsedMs;
+
+        Result(int rows, int written, int rejected, long elapsedMs) {
+            this.rows = rows;
+            this.written = written;
+            this.rejected = rejected;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /** Rows read, including rejected ones. */
+        public int getRows() { return rows; }
+        /** Rows that were new or newer than the catalog and were stored. */
+        public int getWritten() { return written; }
+        public int getRejected() { return rejected; }
+        public long getElapsedMs() { return elapsedMs; }
+
+        public long getRowsPerSecond() {
+            return rows * 1000L / Math.max(1, elapsedMs);
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows, " + written + " written, " + rejected + " rejected in "
+                    + elapsedMs + " ms (" + getRowsPerSecond() + " rows/s)";
+        }
+    }
+
+    private final ProductCatalog catalog;
+    private final int batchSize;
+    private final ProductCatalog.Batch batch = new ProductCatalog.Batch();
+    private ProgressListener listener;
+    private long importVersion;
+    private int rows;
+    private int written;
+    private int rejected;
+
+    public CatalogImporter(ProductCatalog catalog) {
+        this(catalog, DEFAULT_BATCH_SIZE);
+    }
+
+    public CatalogImporter(ProductCatalog catalog, int batchSize) {
+        this.catalog = catalog;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public Result importFile(File file, ProgressListener listener) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return importStream(input, listener);
+        }
+    }
+
+    /** Downloads {@code url} and imports it as it arrives. */
+    public Result importUrl(String url, ProgressListener listener) throws IOException {
+        // The media client: a large feed may take minutes, and it must not go through the
+        // API's HTTP cache, where it would push out the playlist responses.
+        Request request = new Request.Builder().url(url).header("Cache-Control", "no-store").build();
+        try (Response response = NetworkClient.media().newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Server error: " + response.code());
+            }
+            return importStream(body.byteStream(), listener);
+        }
+    }
+
+    /** Imports UTF-8 CSV or JSON from {@code input}; does not close it. */
+    public synchronized Result importStream(InputStream input, ProgressListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+        this.listener = listener;
+        importVersion = System.currentTimeMillis();
+        rows = 0;
+        written = 0;
+        rejected = 0;
+        batch.clear();
+        long start = System.nanoTime();
+
+        int first;
+        do {
+            reader.mark(1);
+            first = reader.read();
+        } while (first == '\uFEFF' || (first >= 0 && Character.isWhitespace(first)));
+        if (first >= 0) reader.reset();
+
+        try {
+            if (first == '[') {
+                readJson(reader);
+            } else if (first >= 0) {
+                readCsv(reader);
+            }
+            applyBatch();
+        } finally {
+            catalog.flush();
+        }
+
+        Result result = new Result(rows, written, rejected, (System.nanoTime() - start) / 1_000_000);
+        Log.d("Product", "Catalog import: " + result);
+        return result;
+    }
+
+    private void readCsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        char separator = header.indexOf(',') < 0 && header.indexOf(';') >= 0 ? ';' : ',';
+        List<String> fields = new ArrayList<>();
+        splitCsv(header, reader, separator, fields);
+
+        int barcodeColumn = -1;
+        int nameColumn = -1;
+        int priceColumn = -1;
+        int versionColumn = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "barcode": barcodeColumn = i; break;
+                case "name": nameColumn = i; break;
+                case "price": priceColumn = i; break;
+                case "version": versionColumn = i; break;
+                default: break;
+            }
+        }
+        if (barcodeColumn < 0 || priceColumn < 0) {
+            throw new IOException("CSV header needs barcode and price columns: " + header);
+        }
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            splitCsv(line, reader, separator, fields);
+            addRow(field(fields, barcodeColumn), field(fields, nameColumn),
+                    field(fields, priceColumn), field(fields, versionColumn));
+        }
+    }
+
+    /** Splits one record; a quoted field may span lines, which are then read from {@code reader}. */
+    private static void splitCsv(String line, BufferedReader reader, char separator, List<String> fields)
+            throws IOException {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) break;
+                String next = reader.readLine();
+                if (next == null) break;
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : null;
+    }
+
+    private void readJson(Reader input) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String barcode = null;
+                String name = null;
+                String price = null;
+                String version = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    switch (key) {
+                        // nextString() also returns numbers as written, so 012345 stays intact.
+                        case "barcode": barcode = reader.nextString(); break;
+                        case "name": name = reader.nextString(); break;
+                        case "price": price = reader.nextString(); break;
+                        case "version": version = reader.nextString(); break;
+                        default: reader.skipValue(); break;
+                    }
+                }
+                reader.endObject();
+                addRow(barcode, name, price, version);
+            }
+            reader.endArray();
+        } catch (IllegalStateException e) {
+            throw new JsonParseException("Malformed catalog at " + reader.getPath(), e);
+        }
+    }
+
+    private void addRow(String barcode, String name, String price, String version) throws IOException {
+        rows++;
+        try {
+            if (barcode == null || price == null) throw new IllegalArgumentException("Missing barcode or price");
+            barcode = barcode.trim();
+            name = name != null ? name.trim() : "";
+            if (name.isEmpty()) {
+                ProductCatalog.Product existing = catalog.get(barcode);
+                if (existing == null) throw new IllegalArgumentException("New product without a name");
+                name = existing.getName();
+            }
+            long rowVersion = version == null || version.trim().isEmpty()
+                    ? importVersion : Long.parseLong(version.trim());
+            batch.add(barcode, name, ProductCatalog.parseCents(price), rowVersion);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // NumberFormatException is an IllegalArgumentException.
+            if (rejected++ < LOGGED_REJECTS) {
+                Log.w("Product", "Skipping catalog row " + rows + " (" + barcode + "): " + e);
+            }
+            return;
+        }
+        if (batch.size() >= batchSize) applyBatch();
+    }
+
+    private void applyBatch() throws IOException {
+        if (batch.size() == 0) return;
+        written += catalog.apply(batch);
+        batch.clear();
+        if (listener != null) listener.onProgress(rows, written);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports the price feed at {@code catalog.url} into the {@link ProductCatalog} once a
+ * night. The feed can be the full price list or only the day's changes; see
+ * {@link CatalogImporter} for how versions keep unchanged rows from being rewritten.
+ */
+public class CatalogSyncWorker extends Worker {
+
+    static final String WORK_NAME = "catalog-sync-nightly";
+    static final String KEY_URL = "url";
+    static final String KEY_ROWS = "rows";
+    static final String KEY_WRITTEN = "written";
+    static final String KEY_ROWS_PER_SECOND = "rowsPerSecond";
+
+    public CatalogSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /** Schedules the nightly import of {@code url} at {@code hour}, replacing an earlier URL. */
+    public static void schedule(Context context, String url, int hour) {
+        PeriodicWorkRequest nightly = new PeriodicWorkRequest.Builder(CatalogSyncWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .setRequiresBatteryNotLow(true)
+                        .build())
+                .setInputData(new Data.Builder()
+                        .putString(KEY_URL, url)
+                        .build())
+                .setInitialDelay(BandwidthPolicy.millisUntilHour(hour, Calendar.getInstance()),
+                        TimeUnit.MILLISECONDS)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 5, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, nightly);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String url = getInputData().getString(KEY_URL);
+        if (url == null || url.isEmpty()) return Result.success();
+
+        Context context = getApplicationContext();
+        try {
+            ProductCatalog catalog = ProductCatalog.getInstance(context);
+            CatalogImporter.Result result = new CatalogImporter(catalog).importUrl(url, null);
+            return Result.success(new Data.Builder()
+                    .putInt(KEY_ROWS, result.getRows())
+                    .putInt(KEY_WRITTEN, result.getWritten())
+                    .putLong(KEY_ROWS_PER_SECOND, result.getRowsPerSecond())
+                    .build());
+        } catch (IOException | JsonParseException e) {
+            // Batches already applied stay; the retry skips them because their versions match.
+            Log.e("Product", "Catalog sync failed: " + e.getMessage());
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.Observer;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules {@link ContentSyncWorker} and exposes its progress to the UI.
+ * <p>
+ * There are two runs. At startup, one sync runs as soon as any network is available,
+ * because a screen cannot play what it does not have. Once a day, in the quiet hour
+ * given by {@code content.sync.hour}, a sync runs on an unmetered network. It
+ * revalidates the playlist and re-hashes the cached files. A startup sync during peak
+ * hours may hand its downloads to a third, off-peak run. All are unique work, so
+ * recreating the Activity or opening another screen attaches to the running sync
+ * instead of restarting it.
+ * <p>
+ * A run's URL list goes to a file and only its path goes into the work input, since
+ * WorkManager rejects input over 10 KB and a playlist can hold thousands of URLs.
+ */
+public final class ContentSync {
+
+    static final String STARTUP_WORK = "content-sync-startup";
+    static final String NIGHTLY_WORK = "content-sync-nightly";
+    static final String OFFPEAK_WORK = "content-sync-offpeak";
+
+    public static final class Progress {
+        private final UUID workId;
+        private final int done;
+        private final int total;
+        private final int failed;
+        private final boolean playlistUpdated;
+        private final boolean deferred;
+        private final long bytesPerSecond;
+        private final boolean finished;
+
+        Progress(UUID workId, Data data, boolean finished) {
+            this.workId = workId;
+            this.done = data.getInt(ContentSyncWorker.KEY_DONE, 0);
+            this.total = data.getInt(ContentSyncWorker.KEY_TOTAL, 0);
+            this.failed = data.getInt(ContentSyncWorker.KEY_FAILED, 0);
+            this.playlistUpdated = data.getBoolean(ContentSyncWorker.KEY_PLAYLIST_UPDATED, false);
+            this.deferred = data.getBoolean(ContentSyncWorker.KEY_DEFERRED, false);
+            this.bytesPerSecond = data.getLong(ContentSyncWorker.KEY_BYTES_PER_SECOND, 0);
+            this.finished = finished;
+        }
+
+        /** The run that published this update; every update of a run repeats its flags. */
+        public UUID getWorkId() { return workId; }
+        public int getDone() { return done; }
+        public int getTotal() { return total; }
+        public int getFailed() { return failed; }
+        /** The sync stored a new playlist snapshot. */
+        public boolean isPlaylistUpdated() { return playlistUpdated; }
+        /** The downloads were postponed to off-peak hours; another run will report them. */
+        public boolean isDeferred() { return deferred; }
+        /** Download rate achieved across all transfers when this update was published. */
+        public long getBytesPerSecond() { return bytesPerSecond; }
+        public boolean isFinished() { return finished; }
+    }
+
+    private ContentSync() {
+    }
+
+    /**
+     * Starts the startup sync for {@code urls}, the playlist the screen is showing, unless
+     * one is already running. Also makes sure the nightly sync is scheduled. The URL list
+     * is written on a background thread, so this can be called from the main thread.
+     */
+    public static void start(Context context, List<String> urls, int syncHour, boolean unmeteredOnly) {
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> enqueue(appContext, urls, syncHour, unmeteredOnly), "content-sync-start").start();
+    }
+
+    private static void enqueue(Context context, List<String> urls, int syncHour, boolean unmeteredOnly) {
+        WorkManager workManager = WorkManager.getInstance(context);
+
+        OneTimeWorkRequest startup = new OneTimeWorkRequest.Builder(ContentSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setInputData(urlsInput(context, STARTUP_WORK, urls)
+                        .putBoolean(ContentSyncWorker.KEY_DEFERRABLE, true)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        workManager.enqueueUniqueWork(STARTUP_WORK, ExistingWorkPolicy.KEEP, startup);
+
+        PeriodicWorkRequest nightly = new PeriodicWorkRequest.Builder(ContentSyncWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(unmeteredOnly ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                        .setRequiresBatteryNotLow(true)
+                        .build())
+                .setInputData(new Data.Builder()
+                        .putBoolean(ContentSyncWorker.KEY_VERIFY, true)
+                        .build())
+                .setInitialDelay(BandwidthPolicy.millisUntilHour(syncHour, Calendar.getInstance()),
+                        TimeUnit.MILLISECONDS)
+                .build();
+        workManager.enqueueUniquePeriodicWork(NIGHTLY_WORK, ExistingPeriodicWorkPolicy.KEEP, nightly);
+    }
+
+    /** Delivers progress of both syncs on the main thread while {@code owner} is started. */
+    public static void observe(Context context, LifecycleOwner owner, Observer<Progress> observer) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        Observer<List<WorkInfo>> forward = infos -> {
+            for (WorkInfo info : infos) {
+                WorkInfo.State state = info.getState();
+                if (state == WorkInfo.State.RUNNING) {
+                    observer.onChanged(new Progress(info.getId(), info.getProgress(), false));
+                } else if (state == WorkInfo.State.SUCCEEDED) {
+                    observer.onChanged(new Progress(info.getId(), info.getOutputData(), true));
+                }
+            }
+        };
+        workManager.getWorkInfosForUniqueWorkLiveData(STARTUP_WORK).observe(owner, forward);
+        workManager.getWorkInfosForUniqueWorkLiveData(NIGHTLY_WORK).observe(owner, forward);
+        workManager.getWorkInfosForUniqueWorkLiveData(OFFPEAK_WORK).observe(owner, forward);
+    }
+
+    /** Downloads {@code urls} once off-peak hours begin, {@code delayMs} from now. */
+    static void scheduleOffPeak(Context context, Collection<String> urls, long delayMs) {
+        OneTimeWorkRequest offPeak = new OneTimeWorkRequest.Builder(ContentSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setInputData(urlsInput(context, OFFPEAK_WORK, urls).build())
+                .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(OFFPEAK_WORK, ExistingWorkPolicy.REPLACE, offPeak);
+    }
+
+    /**
+     * Input naming the file that holds {@code urls}. Each unique work has one file, which a
+     * later enqueue replaces atomically. If it cannot be written, the input names none and
+     * the worker falls back to the playlist snapshot.
+     */
+    private static Data.Builder urlsInput(Context context, String workName, Collection<String> urls) {
+        Data.Builder input = new Data.Builder();
+        File file = new File(context.getFilesDir(), workName + ".urls");
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (String url : urls) {
+                writer.write(url);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e("Prefetch", "Failed to store URLs for " + workName, e);
+            tmp.delete();
+            return input;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e("Prefetch", "Failed to store URLs for " + workName);
+            tmp.delete();
+            return input;
+        }
+        return input.putString(ContentSyncWorker.KEY_URLS_FILE, file.getPath());
+    }
+
+    /** Reads a list written by {@link #urlsInput}; an empty list if {@code path} is null or gone. */
+    static List<String> readUrls(String path) {
+        List<String> urls = new ArrayList<>();
+        if (path == null) return urls;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) urls.add(line);
+            }
+        } catch (IOException e) {
+            Log.e("Prefetch", "Failed to read URLs from " + path, e);
+            urls.clear();
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refreshes the playlist and brings the media cache in line with it, independent of any
+ * Activity. Transfers go through {@link MediaCacheManager}, so a screen that needs an item
+ * right now joins the same download instead of starting a second one.
+ * <p>
+ * A deferrable run started during peak hours only refreshes the playlist; the downloads
+ * are handed to an off-peak run (see {@link BandwidthPolicy}). Items about to play are
+ * fetched by playback itself in the meantime.
+ * <p>
+ * Progress is published as work progress ({@link #KEY_DONE}, {@link #KEY_TOTAL},
+ * {@link #KEY_FAILED}, {@link #KEY_PLAYLIST_UPDATED}, {@link #KEY_DEFERRED},
+ * {@link #KEY_BYTES_PER_SECOND}); see {@link ContentSync#observe}.
+ * <p>
+ * A run with failed downloads is retried with backoff, unless every failure was a 4xx
+ * answer: those URLs will fail the same way again, so the run succeeds and reports them
+ * as failed.
+ */
+public class ContentSyncWorker extends Worker {
+
+    static final String KEY_URLS_FILE = "urlsFile";
+    static final String KEY_VERIFY = "verify";
+    static final String KEY_DEFERRABLE = "deferrable";
+    static final String KEY_DONE = "done";
+    static final String KEY_TOTAL = "total";
+    static final String KEY_FAILED = "failed";
+    static final String KEY_PLAYLIST_UPDATED = "playlistUpdated";
+    static final String KEY_DEFERRED = "deferred";
+    static final String KEY_BYTES_PER_SECOND = "bytesPerSecond";
+
+    private static final int EARLY_PREFETCH_COUNT = 3;
+
+    private final List<String> started = new ArrayList<>();
+
+    public ContentSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        MediaCacheManager cacheManager = MediaCacheManager.getInstance(context);
+        PlaylistRepository repository = new PlaylistRepository(context);
+
+        BandwidthPolicy policy = cacheManager.getBandwidthPolicy();
+        Calendar now = Calendar.getInstance();
+        boolean defer = getInputData().getBoolean(KEY_DEFERRABLE, false) && policy.shouldDeferPrefetch(now);
+
+        boolean playlistUpdated = false;
+        List<MediaItem> items = null;
+        try {
+            // The head of the playlist plays first, so its downloads start while the rest
+            // of the response is still being parsed.
+            items = repository.refreshBlocking(defer ? null : (index, item) -> {
+                if (index < EARLY_PREFETCH_COUNT && !cacheManager.isCached(item.getUrl())) {
+                    synchronized (started) {
+                        started.add(item.getUrl());
+                    }
+                    cacheManager.downloadMedia(item.getUrl(), DownloadScheduler.Priority.PREFETCH);
+                }
+            });
+            playlistUpdated = items != null && !items.isEmpty();
+        } catch (IOException | RuntimeException e) {
+            Log.e("API", "Playlist refresh failed: " + e.getMessage());
+        }
+
+        // The screen may be playing a bundled playlist that was never snapshotted.
+        Set<String> urls = new LinkedHashSet<>();
+        if (!playlistUpdated) {
+            urls.addAll(ContentSync.readUrls(getInputData().getString(KEY_URLS_FILE)));
+            if (urls.isEmpty()) items = repository.loadSnapshot();
+        }
+        if (items != null) {
+            for (MediaItem item : items) urls.add(item.getUrl());
+        }
+        if (urls.isEmpty()) return Result.success(progress(0, 0, 0, false, false, 0));
+
+        cacheManager.addPinnedUrls(urls);
+        boolean verify = getInputData().getBoolean(KEY_VERIFY, false);
+        int total = urls.size();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        boolean updated = playlistUpdated;
+
+        if (defer) {
+            long delay = policy.millisUntilOffPeak(now);
+            ContentSync.scheduleOffPeak(context, urls, delay);
+            Log.d("Prefetch", "Peak hours, prefetch deferred by " + delay / 60_000 + " min");
+            int cached = 0;
+            for (String url : urls) {
+                if (cacheManager.isCached(url)) cached++;
+            }
+            return Result.success(progress(cached, total, 0, updated, true, 0));
+        }
+
+        setProgressAsync(progress(0, total, 0, updated, false, 0));
+
+        List<CompletableFuture<File>> downloads = new ArrayList<>();
+        for (String url : urls) {
+            if (isStopped()) break;
+            if (verify && cacheManager.isCached(url) && !cacheManager.verifyIntegrity(url)) {
+                Log.w("Prefetch", "Cached copy failed verification, downloading again: " + url);
+            }
+            if (cacheManager.isCached(url)) {
+                done.incrementAndGet();
+                continue;
+            }
+
+            synchronized (started) {
+                started.add(url);
+            }
+            downloads.add(cacheManager.downloadMedia(url, DownloadScheduler.Priority.PREFETCH)
+                    .whenComplete((file, error) -> {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                            if (isPermanent(error)) rejected.incrementAndGet();
+                            Log.e("Prefetch", "Error downloading: " + url, error);
+                        }
+                        setProgressAsync(progress(done.incrementAndGet(), total, failed.get(), updated,
+                                false, cacheManager.getDownloadThroughput()));
+                    }));
+        }
+        setProgressAsync(progress(done.get(), total, failed.get(), updated, false, 0));
+
+        for (CompletableFuture<File> download : downloads) {
+            try {
+                download.get();
+            } catch (ExecutionException | CancellationException ignored) {
+                // Counted in whenComplete.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.retry();
+            }
+        }
+
+        Log.d("Prefetch", "Content sync finished: " + done.get() + "/" + total + ", " + failed.get()
+                + " failed, " + rejected.get() + " of them rejected by the server");
+        Data output = progress(done.get(), total, failed.get(), updated, false, 0);
+        return failed.get() > rejected.get() || isStopped() ? Result.retry() : Result.success(output);
+    }
+
+    /**
+     * A 4xx answer, which a retry would only repeat. 408 and 429 are the exceptions: the
+     * server asks to be tried again later.
+     */
+    private static boolean isPermanent(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (!(error instanceof MediaDownloader.HttpStatusException)) return false;
+        int code = ((MediaDownloader.HttpStatusException) error).getCode();
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+    /** Constraints no longer hold (e.g. the network became metered): stop this run's prefetches. */
+    @Override
+    public void onStopped() {
+        MediaCacheManager cacheManager = MediaCacheManager.getInstance(getApplicationContext());
+        synchronized (started) {
+            for (String url : started) {
+                cacheManager.cancelDownload(url);
+            }
+        }
+    }
+
+    private static Data progress(int done, int total, int failed, boolean playlistUpdated,
+                                 boolean deferred, long bytesPerSecond) {
+        return new Data.Builder()
+                .putInt(KEY_DONE, done)
+                .putInt(KEY_TOTAL, total)
+                .putInt(KEY_FAILED, failed)
+                .putBoolean(KEY_PLAYLIST_UPDATED, playlistUpdated)
+                .putBoolean(KEY_DEFERRED, deferred)
+                .putLong(KEY_BYTES_PER_SECOND, bytesPerSecond)
+                .build();
+    }
+}
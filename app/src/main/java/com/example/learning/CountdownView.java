@@ -0,0 +1,107 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * "mm:ss" countdown to a deadline on the {@link SystemClock#elapsedRealtime()} clock.
+ * <p>
+ * It runs around the clock, so it is written to cost nothing between seconds. Digits
+ * are written into a reused {@code char[]} and drawn directly, with no String and no
+ * {@code setText}. The view has a fixed size, so a tick invalidates only its own pixels
+ * and never requests a layout. Each tick is posted for the exact moment the displayed
+ * second changes, computed from the deadline. Ticks therefore stay on the media clock
+ * instead of accumulating delay the way a fixed 1000 ms repost does.
+ */
+public class CountdownView extends View {
+
+    private static final float DEFAULT_TEXT_SIZE_SP = 16f;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final char[] digits = {'0', '0', ':', '0', '0'};
+    private final Runnable tick = this::onTick;
+    private long deadline;
+    private long shownSeconds = -1;
+    private boolean running;
+
+    public CountdownView(Context context) {
+        this(context, null);
+    }
+
+    public CountdownView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        paint.setColor(Color.WHITE);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE_SP,
+                getResources().getDisplayMetrics()));
+    }
+
+    /** Counts down to {@code deadlineElapsedMs}, an {@link SystemClock#elapsedRealtime()} instant. */
+    public void setDeadline(long deadlineElapsedMs) {
+        deadline = deadlineElapsedMs;
+        running = true;
+        removeCallbacks(tick);
+        onTick();
+    }
+
+    public void stop() {
+        running = false;
+        removeCallbacks(tick);
+    }
+
+    private void onTick() {
+        if (!running) return;
+
+        long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+        long seconds = remaining / 1000;
+        if (seconds != shownSeconds) {
+            shownSeconds = seconds;
+            format(seconds);
+            invalidate();
+        }
+        // The display shows whole seconds rounded down, so it next changes when the
+        // remaining time crosses the following multiple of 1000 ms.
+        if (remaining > 0) postDelayed(tick, remaining - seconds * 1000 + 1);
+    }
+
+    private void format(long totalSeconds) {
+        long minutes = Math.min(99, totalSeconds / 60);
+        long seconds = totalSeconds % 60;
+        digits[0] = (char) ('0' + minutes / 10);
+        digits[1] = (char) ('0' + minutes % 10);
+        digits[3] = (char) ('0' + seconds / 10);
+        digits[4] = (char) ('0' + seconds % 10);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        int width = (int) Math.ceil(paint.measureText(digits, 0, digits.length)) + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(metrics.descent - metrics.ascent) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawText(digits, 0, digits.length, getPaddingLeft(), getPaddingTop() - paint.ascent(), paint);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (running) onTick();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(tick);
+        super.onDetachedFromWindow();
+    }
+}
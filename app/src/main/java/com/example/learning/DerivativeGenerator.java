@@ -0,0 +1,231 @@
+package com.example.learning;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Produces the display derivative of a freshly cached blob, so playback reads small,
+ * pre-sized files instead of resizing the original on every loop.
+ * <p>
+ * For an image larger than the screen, the derivative is a WebP that just covers the
+ * screen in both dimensions, with EXIF rotation applied. Images that already fit are left
+ * alone. For a video, the derivative is a screen-sized JPEG of the first frame, and the
+ * duration and display size are probed.
+ */
+public class DerivativeGenerator {
+
+    static final String DISPLAY_SUFFIX = ".display.webp";
+    static final String POSTER_SUFFIX = ".poster.jpg";
+    private static final int WEBP_QUALITY = 85;
+    private static final int POSTER_QUALITY = 80;
+
+    public static class Result {
+        private final String fileName;
+        private final long fileSize;
+        private final int width;
+        private final int height;
+        private final long durationMs;
+
+        Result(String fileName, long fileSize, int width, int height, long durationMs) {
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.width = width;
+            this.height = height;
+            this.durationMs = durationMs;
+        }
+
+        /** The derivative written next to the blob, or {@code null} if none was needed. */
+        public String getFileName() { return fileName; }
+        public long getFileSize() { return fileSize; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public long getDurationMs() { return durationMs; }
+    }
+
+    private final int targetWidth;
+    private final int targetHeight;
+
+    public DerivativeGenerator(int targetWidth, int targetHeight) {
+        this.targetWidth = Math.max(1, targetWidth);
+        this.targetHeight = Math.max(1, targetHeight);
+    }
+
+    /** Returns {@code null} if the blob could not be decoded at all. */
+    public Result generate(File blob, String sha256, String contentType) {
+        try {
+            if (isVideo(blob, contentType)) {
+                return generatePoster(blob, new File(blob.getParentFile(), sha256 + POSTER_SUFFIX));
+            }
+            return generateDisplayImage(blob, contentType,
+                    new File(blob.getParentFile(), sha256 + DISPLAY_SUFFIX));
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            Log.e("MediaCache", "Failed to generate derivative for " + blob.getName(), e);
+            return null;
+        }
+    }
+
+    private Result generateDisplayImage(File blob, String contentType, File output) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(blob.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        int rotation = exifRotation(blob);
+        boolean swap = rotation == 90 || rotation == 270;
+        int width = swap ? bounds.outHeight : bounds.outWidth;
+        int height = swap ? bounds.outWidth : bounds.outHeight;
+
+        // Re-encoding would drop the animation, and a small image gains nothing.
+        boolean animated = "image/gif".equalsIgnoreCase(contentType) || blob.getName().endsWith(".gif");
+        float scale = coverScale(width, height);
+        if (animated || scale >= 1f) {
+            return new Result(null, 0, width, height, 0);
+        }
+
+        int outWidth = Math.max(1, Math.round(width * scale));
+        int outHeight = Math.max(1, Math.round(height * scale));
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(width, height, outWidth, outHeight);
+        Bitmap decoded = BitmapFactory.decodeFile(blob.getPath(), options);
+        if (decoded == null) return null;
+
+        Bitmap scaled = transform(decoded, rotation, outWidth, outHeight);
+        try {
+            write(scaled, webpFormat(), WEBP_QUALITY, output);
+        } finally {
+            scaled.recycle();
+        }
+        return new Result(output.getName(), output.length(), outWidth, outHeight, 0);
+    }
+
+    private Result generatePoster(File blob, File output) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(blob.getPath());
+            long durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            int width = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            int height = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            int rotation = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+            if (rotation == 90 || rotation == 270) {
+                int swap = width;
+                width = height;
+                height = swap;
+            }
+            if (width <= 0 || height <= 0) return durationMs > 0 ? new Result(null, 0, -1, -1, durationMs) : null;
+
+            // The first frame is what the handoff shows first, so the poster matches it.
+            Bitmap frame = retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (frame == null) return new Result(null, 0, width, height, durationMs);
+
+            float scale = Math.min(1f, coverScale(frame.getWidth(), frame.getHeight()));
+            Bitmap poster = transform(frame, 0,
+                    Math.max(1, Math.round(frame.getWidth() * scale)),
+                    Math.max(1, Math.round(frame.getHeight() * scale)));
+            try {
+                write(poster, Bitmap.CompressFormat.JPEG, POSTER_QUALITY, output);
+            } finally {
+                poster.recycle();
+            }
+            return new Result(output.getName(), output.length(), width, height, durationMs);
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {
+                // Nothing to recover; the retriever is not used again.
+            }
+        }
+    }
+
+    /** Scale at which the image just covers the screen in both dimensions. */
+    private float coverScale(int width, int height) {
+        return Math.max((float) targetWidth / width, (float) targetHeight / height);
+    }
+
+    /** Largest power of two that keeps the decoded image at least {@code outWidth x outHeight}. */
+    private static int sampleSize(int width, int height, int outWidth, int outHeight) {
+        int sample = 1;
+        while (width / (sample * 2) >= outWidth && height / (sample * 2) >= outHeight) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private static Bitmap transform(Bitmap source, int rotation, int outWidth, int outHeight) {
+        if (rotation == 0 && source.getWidth() == outWidth && source.getHeight() == outHeight) return source;
+
+        boolean swap = rotation == 90 || rotation == 270;
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        matrix.postScale((float) outWidth / (swap ? source.getHeight() : source.getWidth()),
+                (float) outHeight / (swap ? source.getWidth() : source.getHeight()));
+
+        Bitmap result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+        if (result != source) source.recycle();
+        return result;
+    }
+
+    private static void write(Bitmap bitmap, Bitmap.CompressFormat format, int quality, File output)
+            throws IOException {
+        File tmp = new File(output.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            if (!bitmap.compress(format, quality, out)) throw new IOException("Could not encode " + output.getName());
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(output)) {
+            tmp.delete();
+            throw new IOException("Could not store " + output.getName());
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static int exifRotation(File file) {
+        try {
+            switch (new ExifInterface(file.getPath()).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90: return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180: return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270: return 270;
+                default: return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isVideo(File blob, String contentType) {
+        String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+        if (type.startsWith("video/")) return true;
+        if (type.startsWith("image/")) return false;
+        String name = blob.getName();
+        return name.endsWith(".mp4") || name.endsWith(".webm") || name.endsWith(".mkv")
+                || name.endsWith(".mov") || name.endsWith(".avi") || name.endsWith(".3gp");
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
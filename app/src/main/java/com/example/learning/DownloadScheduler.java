@@ -0,0 +1,124 @@
+package com.example.learning;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs downloads on a fixed number of worker threads. Queued tasks are ordered by
+ * {@link Priority} first and submission order second, so the item that is about to
+ * play always overtakes background prefetch.
+ */
+public class DownloadScheduler {
+
+    public enum Priority {
+        PLAYBACK,
+        PREFETCH
+    }
+
+    public interface Job {
+        void run(Task task) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public DownloadScheduler(int maxConcurrent) {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent must be >= 1");
+
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new DownloadThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public Task submit(String key, Priority priority, Job job) {
+        Task task = new Task(key, priority, sequence.getAndIncrement(), job);
+        executor.execute(task);
+        return task;
+    }
+
+    /** Moves a queued task ahead if {@code priority} is more urgent than its current one. */
+    public void promote(Task task, Priority priority) {
+        if (priority.ordinal() >= task.priority.ordinal()) return;
+
+        if (executor.getQueue().remove(task)) {
+            task.priority = priority;
+            executor.execute(task);
+        } else {
+            task.priority = priority;
+        }
+    }
+
+    /**
+     * Cancels a task. A task that was still queued is run immediately on the calling
+     * thread so its job can observe {@link Task#isCancelled()} and notify listeners.
+     */
+    public void cancel(Task task) {
+        task.cancel();
+        if (executor.remove(task)) task.run();
+    }
+
+    public static class Task implements Runnable, Comparable<Task> {
+        private final String key;
+        private final long sequence;
+        private final Job job;
+        private volatile Priority priority;
+        private volatile boolean cancelled;
+        private volatile Runnable cancelHook;
+
+        Task(String key, Priority priority, long sequence, Job job) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+        }
+
+        public String getKey() { return key; }
+        public Priority getPriority() { return priority; }
+        public boolean isCancelled() { return cancelled; }
+
+        /** Registers an action that aborts the in-flight transfer, e.g. {@code call::cancel}. */
+        public void setCancelHook(Runnable hook) {
+            cancelHook = hook;
+            if (cancelled && hook != null) hook.run();
+        }
+
+        void cancel() {
+            cancelled = true;
+            Runnable hook = cancelHook;
+            if (hook != null) hook.run();
+        }
+
+        @Override
+        public void run() {
+            try {
+                job.run(this);
+            } catch (Exception e) {
+                // Jobs report their own failures to listeners; nothing left to do here.
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            if (byPriority != 0) return byPriority;
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class DownloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "media-download-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
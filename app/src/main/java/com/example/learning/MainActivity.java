@@ -1,72 +1,83 @@
 package com.example.learning;
 
-import android.animation.Animator;
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import android.net.Uri;
 import android.content.Intent;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.DisplayMetrics;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
-import android.widget.TextView;
 import android.widget.Toast;
-import android.widget.VideoView;
 import android.view.ViewGroup;
-import android.media.MediaPlayer;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.airbnb.lottie.LottieAnimationView;
+import com.airbnb.lottie.LottieDrawable;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.DataSource;
-import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
 
 import java.io.File;
+import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
-
-import retrofit2.Call;
+import java.util.Set;
+import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity {
 
-    private VideoView videoView;
+    private static final long SYNC_TOLERANCE_MS = 4;
+
+    private VideoSlot[] videoSlots;
+    private VideoSlot activeVideoSlot;
+    private MediaPreloader preloader;
+    private RequestOptions imageOptions;
     private ImageView imageView;
-    private TextView timerTextView;
-    private List<MediaItem> mediaList;
+    private CountdownView countdownView;
+    private Playlist playlist = Playlist.empty();
     private int currentMediaIndex = 0;
+    private String currentMediaId;
     private final Handler handler = new Handler(Looper.getMainLooper());
     private final Runnable nextRunnable = this::advanceToNext;
+    private PlaybackScheduler playbackScheduler;
+    private PlaybackScheduler.Slot currentSlot;
+    private boolean anchorToClock;
+    private boolean syncEnabled;
+    private SyncMaster syncMaster;
+    private SyncFollower syncFollower;
+    private volatile long timelineFingerprint;
+    private volatile boolean timelineRunning;
+    private Long masterEpoch;
 
     private LottieAnimationView lottieAnimationView;
     private MediaCacheManager cacheManager;
-
-    private final Runnable timerRunnable = new Runnable() {
-        @Override
-        public void run() {
-            updateTimer();
-            handler.postDelayed(this, 1000);
-        }
-    };
-    private long startTime;
-    private long currentDuration;
-
-    private int downloadedCount = 0;
-    private int totalMediaCount = 0;
+    private PlaylistRepository playlistRepository;
+
+    private int preloadLookahead;
+    private int contentSyncHour;
+    private boolean contentSyncUnmeteredOnly;
+    private String catalogUrl;
+    private int catalogSyncHour;
+    private int shownDownloadCount;
+    private boolean syncFinishedShown;
+    // Sync runs whose new playlist was already swapped in; each run reports it on every update.
+    private final Set<UUID> appliedPlaylistUpdates = new HashSet<>();
     private boolean allFilesAlreadyExist = false;
     private GestureDetector gestureDetector;
 
@@ -82,12 +93,30 @@ public class MainActivity extends AppCompatActivity {
                         | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
         );
 
-        videoView = findViewById(R.id.videoView);
+        videoSlots = new VideoSlot[] {
+                new VideoSlot(findViewById(R.id.videoViewA)),
+                new VideoSlot(findViewById(R.id.videoViewB))
+        };
         imageView = findViewById(R.id.imageView);
-        timerTextView = findViewById(R.id.timerTextView);
+        countdownView = findViewById(R.id.timerTextView);
         lottieAnimationView = findViewById(R.id.lottieAnimationView);
 
-        cacheManager = MediaCacheManager.getInstance(this);
+        StartupTrace.mark("activity");
+        playlistRepository = new PlaylistRepository(this);
+        Properties mediaProperties = PropertiesLoader.loadProperties(this, R.raw.media);
+        imageOptions = SlideImageOptions.forScreen(this,
+                Boolean.parseBoolean(mediaProperties.getProperty("image.memoryCache", "true").trim()));
+        preloadLookahead = Integer.parseInt(mediaProperties.getProperty("preload.lookahead", "2").trim());
+        playbackScheduler = new PlaybackScheduler(
+                Long.parseLong(mediaProperties.getProperty("schedule.minVisibleMs", "1000").trim()),
+                Long.parseLong(mediaProperties.getProperty("schedule.maxLeadMs", "1000").trim()));
+        anchorToClock = "clock".equalsIgnoreCase(mediaProperties.getProperty("schedule.anchor", "start").trim());
+        startSync(mediaProperties);
+        contentSyncHour = Integer.parseInt(mediaProperties.getProperty("content.sync.hour", "3").trim());
+        contentSyncUnmeteredOnly = Boolean.parseBoolean(
+                mediaProperties.getProperty("content.sync.unmeteredOnly", "true").trim());
+        catalogUrl = mediaProperties.getProperty("catalog.url", "").trim();
+        catalogSyncHour = Integer.parseInt(mediaProperties.getProperty("catalog.sync.hour", "4").trim());
 
         initializeGestureDetector();
 
@@ -101,9 +130,42 @@ public class MainActivity extends AppCompatActivity {
         });
 
 
-        initializeMediaList(this);
         startSplashAnimation();
+        loadStartupData();
+    }
+
+    /**
+     * Opens the media cache and reads the playlist snapshot off the main thread while the
+     * splash animates. Playback starts as soon as both are there.
+     */
+    private void loadStartupData() {
+        new Thread(() -> {
+            MediaCacheManager manager = MediaCacheManager.getInstance(this);
+            StartupTrace.mark("cache");
+            List<MediaItem> snapshot = playlistRepository.loadSnapshot();
+            StartupTrace.mark("playlist");
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                onStartupDataReady(manager, snapshot);
+            });
+        }, "startup-load").start();
+    }
+
+    private void onStartupDataReady(MediaCacheManager manager, List<MediaItem> snapshot) {
+        cacheManager = manager;
+        preloader = new MediaPreloader(this, cacheManager, preloadLookahead, imageOptions);
+        initializeMediaList(this, snapshot);
+
+        if (checkAllFilesExist()) {
+            allFilesAlreadyExist = true;
+            Toast.makeText(this, "Svi fajlovi su već preuzeti", Toast.LENGTH_LONG).show();
+            Log.d("Prefetch", "All files already exist, skipping download");
+        }
 
+        ContentSync.start(this, playlist.getUrls(), contentSyncHour, contentSyncUnmeteredOnly);
+        ContentSync.observe(this, this, this::onContentSyncProgress);
+        if (!catalogUrl.isEmpty()) CatalogSyncWorker.schedule(this, catalogUrl, catalogSyncHour);
+        startMediaPlayback();
     }
 
     private void initializeGestureDetector() {
@@ -119,11 +181,11 @@ public class MainActivity extends AppCompatActivity {
 
     private void openPlayerActivity() {
         // Pauziraj medije
-        if (videoView.isPlaying()) {
-            videoView.pause();
+        if (activeVideoSlot != null) {
+            activeVideoSlot.pause();
         }
 
-        handler.removeCallbacks(timerRunnable);
+        countdownView.stop();
         handler.removeCallbacks(nextRunnable);
 
         Intent intent = new Intent(MainActivity.this, PlayerActivity.class);
@@ -133,61 +195,119 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /** The splash loops until the first item is on screen; see {@link #dismissSplash()}. */
     private void startSplashAnimation() {
         lottieAnimationView.setVisibility(View.VISIBLE);
-        videoView.setVisibility(View.GONE);
         imageView.setVisibility(View.GONE);
-        timerTextView.setVisibility(View.GONE);
+        countdownView.setVisibility(View.GONE);
 
+        lottieAnimationView.setRepeatCount(LottieDrawable.INFINITE);
         lottieAnimationView.playAnimation();
+    }
 
-        if (checkAllFilesExist()) {
-            allFilesAlreadyExist = true;
-            Toast.makeText(this, "Svi fajlovi su već preuzeti", Toast.LENGTH_LONG).show();
-            Log.d("Prefetch", "All files already exist, skipping download");
-        }
+    private void dismissSplash() {
+        if (lottieAnimationView.getVisibility() == View.GONE) return;
+        lottieAnimationView.cancelAnimation();
+        lottieAnimationView.setVisibility(View.GONE);
+        countdownView.setVisibility(View.VISIBLE);
+        StartupTrace.firstFrame(this);
+        reportFullyDrawn();
+    }
 
-        prefetchAllMedia(() -> {
-            Log.d("Prefetch", "All media files processed");
-            if (!allFilesAlreadyExist) {
-                Toast.makeText(this, "Svi fajlovi su preuzeti", Toast.LENGTH_LONG).show();
-            }
-        });
+    /**
+     * Starts the timeline and loads the first item right away, while the splash is still
+     * up. The next items are preloaded at the same time, so the first image decode and
+     * the first video open run in parallel.
+     */
+    private void startMediaPlayback() {
+        if (playlist.isEmpty()) {
+            dismissSplash();
+            return;
+        }
 
-        lottieAnimationView.addAnimatorListener(new Animator.AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animation) {}
+        long now = SystemClock.elapsedRealtime();
+        if (masterEpoch != null) {
+            playbackScheduler.anchorToClock(now - masterEpoch, now);
+        } else if (anchorToClock) {
+            playbackScheduler.anchorToClock(System.currentTimeMillis(), now);
+        } else {
+            playbackScheduler.startAt(currentMediaIndex, now);
+        }
+        timelineRunning = true;
+        playSlot(playbackScheduler.next(now));
+        StartupTrace.mark("playback");
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (areAllFilesDownloaded()) {
-                    startMediaPlayback();
-                } else {
-                    Toast.makeText(MainActivity.this, "Preuzimanje", Toast.LENGTH_SHORT).show();
-                    handler.postDelayed(() -> {
-                        startMediaPlayback();
-                    }, 2000);
-                }
-            }
+        // Nothing is active before the first frame, so a first video goes to slot 0.
+        VideoSlot spare = playlist.get(currentMediaIndex).getType() == MediaType.VIDEO ? videoSlots[1] : videoSlots[0];
+        preloader.preloadAhead(playlist, currentMediaIndex, spare);
+    }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {}
+    /**
+     * Optional video-wall sync: with sync.role=master this device serves its clock and
+     * timeline over UDP; with sync.role=follower it adopts the timeline of sync.master.
+     */
+    private void startSync(Properties properties) {
+        String role = properties.getProperty("sync.role", "off").trim();
+        int port = Integer.parseInt(properties.getProperty("sync.port", String.valueOf(SyncProtocol.DEFAULT_PORT)).trim());
+        try {
+            if ("master".equalsIgnoreCase(role)) {
+                syncMaster = new SyncMaster(port, SystemClock::elapsedRealtime, new SyncMaster.Timeline() {
+                    @Override
+                    public long getEpoch() {
+                        return playbackScheduler.getEpoch();
+                    }
 
-            @Override
-            public void onAnimationRepeat(Animator animation) {}
-        });
+                    @Override
+                    public long getFingerprint() {
+                        return timelineRunning ? timelineFingerprint : 0;
+                    }
+                });
+                syncMaster.start();
+                syncEnabled = true;
+            } else if ("follower".equalsIgnoreCase(role)) {
+                syncFollower = new SyncFollower(properties.getProperty("sync.master", "").trim(), port,
+                        SystemClock::elapsedRealtime,
+                        Long.parseLong(properties.getProperty("sync.intervalMs", "1000").trim()),
+                        (epoch, fingerprint) -> runOnUiThread(() -> applyMasterTimeline(epoch, fingerprint)));
+                syncFollower.start();
+                syncEnabled = true;
+            }
+        } catch (SocketException e) {
+            Log.e("Sync", "Could not start sync as " + role, e);
+        }
     }
 
-    private void startMediaPlayback() {
-        lottieAnimationView.setVisibility(View.GONE);
-        timerTextView.setVisibility(View.VISIBLE);
-        showCurrentMedia();
+    /**
+     * Adopts the master's epoch if both screens run the same timeline. If the item on
+     * screen is off by more than a few milliseconds, its pending advance is moved. If a
+     * different item should be showing, playback jumps to it.
+     */
+    private void applyMasterTimeline(long epoch, long fingerprint) {
+        if (playlist.isEmpty() || fingerprint != timelineFingerprint) return;
+
+        masterEpoch = epoch;
+        long now = SystemClock.elapsedRealtime();
+        playbackScheduler.anchorToClock(now - epoch, now);
+        if (!timelineRunning || currentSlot == null) return;
+
+        // During the lead before a boundary the current slot has not started yet.
+        PlaybackScheduler.Slot slot = playbackScheduler.slotAt(Math.max(now, currentSlot.getStart()));
+        if (slot.getIndex() != currentSlot.getIndex()) {
+            handler.removeCallbacks(nextRunnable);
+            advanceToNext();
+        } else if (Math.abs(slot.getEnd() - currentSlot.getEnd()) > SYNC_TOLERANCE_MS) {
+            currentSlot = slot;
+            long delay = Math.max(0, slot.getEnd() - playbackScheduler.getLeadMs() - now);
+            handler.removeCallbacks(nextRunnable);
+            handler.postDelayed(nextRunnable, delay);
+            countdownView.setDeadline(slot.getEnd());
+        }
     }
 
     private boolean checkAllFilesExist() {
-        if (mediaList == null || mediaList.isEmpty()) return false;
+        if (playlist.isEmpty()) return false;
 
-        for (MediaItem item : mediaList) {
+        for (MediaItem item : playlist.getItems()) {
             if (!cacheManager.isCached(item.getUrl())) {
                 return false;
             }
@@ -195,81 +315,68 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
-    private void prefetchAllMedia(Runnable onComplete) {
-        if (mediaList == null || mediaList.isEmpty()) {
-            runOnUiThread(onComplete);
-            return;
+    /** Progress of the background sync; downloads continue whatever this Activity does. */
+    private void onContentSyncProgress(ContentSync.Progress progress) {
+        if (progress.isPlaylistUpdated() && appliedPlaylistUpdates.add(progress.getWorkId())) {
+            List<MediaItem> items = playlistRepository.loadSnapshot();
+            if (items != null && !items.isEmpty()) swapPlaylist(new Playlist(items));
         }
 
-        totalMediaCount = mediaList.size();
-        downloadedCount = 0;
-
-        for (int i = 0; i < mediaList.size(); i++) {
-            MediaItem item = mediaList.get(i);
-
-            if (cacheManager.isCached(item.getUrl())) {
-                downloadedCount++;
-                Log.d("Prefetch", "File already cached: " + item.getUrl());
-                continue;
-            }
-
-            final int currentIndex = i;
-            cacheManager.downloadMediaAsync(item.getUrl(), new MediaCacheManager.DownloadListener() {
-                @Override
-                public void onSuccess(File file) {
-                    downloadedCount++;
-                    String fileType = item.getType() == MediaType.VIDEO ? " Video" : "🖼 Slika";
-                    Log.d("Prefetch", "Successfully downloaded: " + file.getName());
-
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this,
-                                " " + fileType + " preuzet (" + downloadedCount + "/" + totalMediaCount + ")",
-                                Toast.LENGTH_SHORT).show();
-
-                        if (downloadedCount == totalMediaCount && onComplete != null) {
-                            onComplete.run();
-                        }
-                    });
-                }
-
-                @Override
-                public void onError(Exception e) {
-                    Log.e("Prefetch", "Error downloading: " + item.getUrl(), e);
-                    downloadedCount++;
-
-                    if (downloadedCount == totalMediaCount && onComplete != null) {
-                        runOnUiThread(onComplete);
-                    }
-                }
-
-                @Override
-                public void onProgress() {
+        int downloaded = progress.getDone() - progress.getFailed();
+        if (!allFilesAlreadyExist && downloaded > shownDownloadCount) {
+            shownDownloadCount = downloaded;
+            Toast.makeText(this, "Preuzeto (" + downloaded + "/" + progress.getTotal() + ")",
+                    Toast.LENGTH_SHORT).show();
+        }
 
-                }
-            });
+        if (progress.getBytesPerSecond() > 0) {
+            Log.d("Prefetch", "Download throughput " + progress.getBytesPerSecond() / 1024 + " KB/s, cap "
+                    + cacheManager.getDownloadRateLimit() / 1024 + " KB/s");
+        }
+        if (progress.isDeferred()) {
+            Log.d("Prefetch", "Prefetch deferred to off-peak hours");
+            return;
         }
 
-        if (downloadedCount == totalMediaCount && onComplete != null) {
-            runOnUiThread(onComplete);
+        if (progress.isFinished() && !syncFinishedShown) {
+            syncFinishedShown = true;
+            Log.d("Prefetch", "All media files processed");
+            if (!allFilesAlreadyExist) {
+                Toast.makeText(this, "Svi fajlovi su preuzeti", Toast.LENGTH_LONG).show();
+            }
         }
     }
 
-    private boolean areAllFilesDownloaded() {
-        if (mediaList == null || mediaList.isEmpty()) return false;
+    private void initializeMediaList(Context context, List<MediaItem> snapshot) {
+        List<MediaItem> mediaList = new ArrayList<>();
 
-        for (MediaItem item : mediaList) {
-            if (!cacheManager.isCached(item.getUrl())) {
-                return false;
-            }
+        if (snapshot != null) {
+            mediaList.addAll(snapshot);
+            Log.d("MediaList", "Loaded " + snapshot.size() + " items from playlist snapshot");
+        } else {
+            loadMediaFromProperties(context, mediaList);
         }
-        return true;
-    }
 
-    private void initializeMediaList(Context context) {
-        mediaList = new ArrayList<>();
+        if (mediaList.isEmpty()) {
+            Log.e("MediaList", "No media items loaded, using defaults");
+            mediaList.add(new MediaItem(
+                    "https://picsum.photos/1920/1080",
+                    MediaType.IMAGE,
+                    5000
+            ));
+            mediaList.add(new MediaItem(
+                    "https://picsum.photos/1920/1080?grayscale",
+                    MediaType.IMAGE,
+                    5000
+            ));
+        }
 
-        loadMediaFromServer();
+        playlist = new Playlist(mediaList);
+        if (!playlist.isEmpty()) setTimeline(playlist);
+        cacheManager.pinUrls(playlist.getUrls());
+    }
 
+    private void loadMediaFromProperties(Context context, List<MediaItem> mediaList) {
         try {
             Properties properties = PropertiesLoader.loadProperties(context, R.raw.media);
             int mediaCount = Integer.parseInt(properties.getProperty("media.count", "0"));
@@ -288,68 +395,58 @@ public class MainActivity extends AppCompatActivity {
         } catch (Exception e) {
             Log.e("MediaList", "Error loading from properties", e);
         }
-
-        if (mediaList.isEmpty()) {
-            Log.e("MediaList", "No media items loaded, using defaults");
-            mediaList.add(new MediaItem(
-                    "https://picsum.photos/1920/1080",
-                    MediaType.IMAGE,
-                    5000
-            ));
-            mediaList.add(new MediaItem(
-                    "https://picsum.photos/1920/1080?grayscale",
-                    MediaType.IMAGE,
-                    5000
-            ));
-        }
     }
 
-    private void loadMediaFromServer() {
-        MediaApiService apiService = RetrofitClient.getClient().create(MediaApiService.class);
-
-        Call<List<MediaItemResponse>> call = apiService.getMediaItems();
-        call.enqueue(new retrofit2.Callback<List<MediaItemResponse>>() {
-            @Override
-            public void onResponse(Call<List<MediaItemResponse>> call, retrofit2.Response<List<MediaItemResponse>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<MediaItem> serverMediaList = new ArrayList<>();
-
-                    for (MediaItemResponse itemResponse : response.body()) {
-                        int duration = 5000;
-                        if (itemResponse.getDurationInSeconds() != null) {
-                            duration = itemResponse.getDurationInSeconds() * 1000;
-                        } else if ("video".equalsIgnoreCase(itemResponse.getType())) {
-                            duration = 15000;
-                        }
-
-                        MediaType mediaType = MediaType.fromString(itemResponse.getType());
-                        serverMediaList.add(new MediaItem(itemResponse.getUrl(), mediaType, duration));
-                    }
-
-                    mediaList.clear();
-                    mediaList.addAll(serverMediaList);
-
-                    Log.d("API", "Loaded " + mediaList.size() + " items from server");
-                } else {
-                    Log.e("API", "Server error: " + response.code());
-                }
+    /**
+     * Replaces the playlist without interrupting the item on screen. The current item keeps
+     * playing; if it was removed, playback continues with whatever followed it before.
+     * Pins move to the new set of URLs so removed assets become eligible for eviction; the
+     * sync worker that stored the new playlist downloads the added ones.
+     */
+    private void swapPlaylist(Playlist newPlaylist) {
+        Playlist oldPlaylist = playlist;
+        PlaylistDiff diff = PlaylistDiff.compute(oldPlaylist, newPlaylist);
+        Log.d("API", "Loaded " + newPlaylist.size() + " items from server (" + diff + ")");
+        if (diff.isEmpty()) return;
+
+        int newIndex = currentMediaId != null ? newPlaylist.indexOf(currentMediaId) : -1;
+        if (newIndex < 0 && currentMediaId != null) {
+            // Current item was removed: find the first surviving item that followed it.
+            int oldIndex = oldPlaylist.indexOf(currentMediaId);
+            for (int i = 1; i <= oldPlaylist.size() && newIndex < 0; i++) {
+                int candidate = newPlaylist.indexOf(oldPlaylist.getId((oldIndex + i) % oldPlaylist.size()));
+                if (candidate >= 0) newIndex = candidate - 1;
             }
+            currentMediaId = null;
+        }
 
-            @Override
-            public void onFailure(Call<List<MediaItemResponse>> call, Throwable t) {
-                Log.e("API", "Network error: " + t.getMessage());
+        playlist = newPlaylist;
+        currentMediaIndex = newIndex;
+        if (!newPlaylist.isEmpty()) {
+            // The item on screen keeps its end time; the new timeline continues from there.
+            setTimeline(newPlaylist);
+            if (anchorToClock && syncFollower == null) {
+                playbackScheduler.anchorToClock(System.currentTimeMillis(), SystemClock.elapsedRealtime());
+            } else if (currentSlot != null) {
+                playbackScheduler.continueAfter(newIndex, currentSlot.getEnd());
             }
-        });
+            if (currentSlot != null) {
+                currentSlot = new PlaybackScheduler.Slot(newIndex, currentSlot.getStart(), currentSlot.getEnd());
+            }
+        }
+
+        cacheManager.pinUrls(newPlaylist.getUrls());
     }
 
     private void showCurrentMedia() {
-        if (mediaList == null || mediaList.isEmpty()) {
+        if (playlist.isEmpty()) {
             Log.e("MediaList", "Media list is null or empty");
             return;
         }
-        if (currentMediaIndex >= mediaList.size()) currentMediaIndex = 0;
+        if (currentMediaIndex < 0 || currentMediaIndex >= playlist.size()) currentMediaIndex = 0;
 
-        MediaItem current = mediaList.get(currentMediaIndex);
+        MediaItem current = playlist.get(currentMediaIndex);
+        currentMediaId = playlist.getId(currentMediaIndex);
 
         if (cacheManager.isCached(current.getUrl())) {
             File localFile = cacheManager.getMediaFile(current.getUrl());
@@ -358,7 +455,8 @@ public class MainActivity extends AppCompatActivity {
             String fileType = current.getType() == MediaType.VIDEO ? "Video" : "Slika";
             Toast.makeText(this, "Preuzimanje: " + fileType, Toast.LENGTH_SHORT).show();
 
-            cacheManager.downloadMediaAsync(current.getUrl(), new MediaCacheManager.DownloadListener() {
+            cacheManager.downloadMediaAsync(current.getUrl(), DownloadScheduler.Priority.PLAYBACK,
+                    new MediaCacheManager.DownloadListener() {
                 @Override
                 public void onSuccess(File file) {
                     runOnUiThread(() -> {
@@ -385,124 +483,156 @@ public class MainActivity extends AppCompatActivity {
 
     private void displayMedia(MediaItem mediaItem, File localFile) {
         handler.removeCallbacks(nextRunnable);
-        handler.removeCallbacks(timerRunnable);
-
-        startTime = System.currentTimeMillis();
-        currentDuration = mediaItem.getDuration();
 
         if (mediaItem.getType() == MediaType.VIDEO) {
             showVideo(mediaItem, localFile);
         } else {
             showImage(mediaItem, localFile);
         }
-
-        handler.post(timerRunnable);
     }
 
-    @SuppressLint("DefaultLocale")
-    private void updateTimer() {
-        long elapsed = System.currentTimeMillis() - startTime;
-        long remaining = currentDuration - elapsed;
+    /**
+     * Called when the current item is on screen. The advance is posted one lead time
+     * before the item's end on the timeline, so the next item appears on the boundary.
+     * The countdown shows the same boundary.
+     */
+    private void scheduleNext() {
+        long now = SystemClock.elapsedRealtime();
+        if (currentSlot == null) {
+            playbackScheduler.startAt(currentMediaIndex, now);
+            currentSlot = playbackScheduler.slotAt(now);
+        }
+        playbackScheduler.onShown(currentSlot, now);
+        long delay = playbackScheduler.advanceDelay(currentSlot, now);
 
-        if (remaining < 0) remaining = 0;
+        handler.removeCallbacks(nextRunnable);
+        handler.postDelayed(nextRunnable, delay);
+        countdownView.setDeadline(now + delay + playbackScheduler.getLeadMs());
+    }
 
-        long seconds = remaining / 1000;
-        long minutes = seconds / 60;
-        seconds = seconds % 60;
+    /** Loads the playlist into the scheduler; a follower waits for the master's matching epoch. */
+    private void setTimeline(Playlist playlist) {
+        long[] durations = durationsOf(playlist);
+        playbackScheduler.setDurations(durations);
+        timelineFingerprint = SyncProtocol.fingerprint(playlist.getUrls(), durations);
+        masterEpoch = null;
+    }
 
-        String timeText = String.format("%02d:%02d", minutes, seconds);
-        timerTextView.setText(timeText);
+    /**
+     * Timeline durations: the configured time, capped by the probed length for videos.
+     * In sync mode only the configured time is used, since every screen must compute the
+     * same timeline whether or not it has probed the video yet.
+     */
+    private long[] durationsOf(Playlist playlist) {
+        long[] durations = new long[playlist.size()];
+        for (int i = 0; i < durations.length; i++) {
+            MediaItem item = playlist.get(i);
+            long duration = item.getDuration();
+            MediaCacheEntry entry = item.getType() == MediaType.VIDEO && !syncEnabled
+                    ? cacheManager.getEntry(item.getUrl()) : null;
+            if (entry != null && entry.getDurationMs() > 0) duration = Math.min(duration, entry.getDurationMs());
+            durations[i] = duration;
+        }
+        return durations;
     }
 
     private void showVideo(MediaItem mediaItem, File localFile) {
-        imageView.setVisibility(View.GONE);
-        videoView.setVisibility(View.VISIBLE);
-
-        try {
-            Uri uri = Uri.fromFile(localFile);
-            videoView.setVideoURI(uri);
-
-            videoView.setOnPreparedListener(mp -> {
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                    try {
-                        mp.setVideoScalingMode(MediaPlayer.VIDEO_SCALING_MODE_SCALE_TO_FIT_WITH_CROPPING);
-                    } catch (Exception e) {
-                        Log.e("Video", "Video scaling not supported", e);
-                    }
-                }
-
-                mp.setOnVideoSizeChangedListener((mp2, videoWidth, videoHeight) -> {
-                    if (videoWidth <= 0 || videoHeight <= 0) return;
-
-                    DisplayMetrics dm = getResources().getDisplayMetrics();
-                    int screenWidth = dm.widthPixels;
-                    int screenHeight = dm.heightPixels;
-
-                    float videoAspect = (float) videoWidth / videoHeight;
-                    float screenAspect = (float) screenWidth / screenHeight;
-
-                    int newWidth, newHeight;
-                    if (videoAspect > screenAspect) {
-
-                        newHeight = screenHeight;
-                        newWidth = (int) (screenHeight * videoAspect);
-                    } else {
-
-                        newWidth = screenWidth;
-                        newHeight = (int) (screenWidth / videoAspect);
-                    }
+        String mediaId = currentMediaId;
+        VideoSlot slot = videoSlotFor(mediaId);
+        if (!slot.holds(mediaId)) {
+            slot.prepare(mediaId, localFile);
+            // Not preloaded, so the decoder needs a moment; bridge the gap with the poster frame.
+            File poster = cacheManager.getPosterFile(mediaItem.getUrl());
+            if (poster != null) {
+                stopActiveVideo();
+                Glide.with(this).load(poster).apply(imageOptions).into(imageView);
+                imageView.setVisibility(View.VISIBLE);
+            }
+        }
 
-                    FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(newWidth, newHeight);
-                    params.gravity = Gravity.CENTER;
-                    videoView.setLayoutParams(params);
+        slot.setListener(new VideoSlot.Listener() {
+            @Override
+            public void onFirstFrame(VideoSlot readySlot) {
+                // Swap on the next vsync so the old content stays up until the new frame exists.
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+                    readySlot.show();
+                    if (activeVideoSlot != null && activeVideoSlot != readySlot) activeVideoSlot.stop();
+                    activeVideoSlot = readySlot;
+                    imageView.setVisibility(View.GONE);
+                    onHandoffComplete();
                 });
+            }
 
-                mp.setLooping(false);
-                videoView.start();
-
-                int videoDuration = mp.getDuration();
-                long scheduleDelay = Math.min(mediaItem.getDuration(),
-                        videoDuration > 0 ? videoDuration : mediaItem.getDuration());
-                handler.postDelayed(nextRunnable, scheduleDelay);
-            });
-
-            videoView.setOnCompletionListener(mp -> {
-                handler.removeCallbacks(nextRunnable);
-                handler.post(nextRunnable);
-            });
+            @Override
+            public void onCompletion(VideoSlot completedSlot) {
+                // The last frame stays up until the item's end on the timeline.
+            }
 
-            videoView.setOnErrorListener((mp, what, extra) -> {
+            @Override
+            public void onError(VideoSlot failedSlot, int what, int extra) {
                 Log.e("Video", "Video error: " + what + ", " + extra);
+                cacheManager.invalidateIfMissing(mediaItem.getUrl());
+                failedSlot.stop();
                 handler.removeCallbacks(nextRunnable);
                 handler.postDelayed(nextRunnable, 1000);
-                return true;
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
-            handler.postDelayed(nextRunnable, 1000);
+            }
+        });
+
+        slot.start(this::scheduleNext);
+    }
+
+    /** The slot already holding {@code mediaId}, otherwise the one that is not on screen. */
+    private VideoSlot videoSlotFor(String mediaId) {
+        for (VideoSlot slot : videoSlots) {
+            if (slot != activeVideoSlot && slot.holds(mediaId)) return slot;
         }
+        return standbyVideoSlot();
     }
 
-    private void showImage(MediaItem mediaItem, File localFile) {
-        videoView.setVisibility(View.GONE);
-        imageView.setVisibility(View.VISIBLE);
-        imageView.setScaleType(ImageView.ScaleType.FIT_CENTER); // Changed to FIT_CENTER first
+    private VideoSlot standbyVideoSlot() {
+        return videoSlots[0] == activeVideoSlot ? videoSlots[1] : videoSlots[0];
+    }
 
-        try {
+    private void stopActiveVideo() {
+        if (activeVideoSlot != null) {
+            activeVideoSlot.stop();
+            activeVideoSlot = null;
+        }
+    }
 
-            RequestOptions options = new RequestOptions()
-                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                    .skipMemoryCache(true)
-                    .dontTransform();
+    /** Runs once the new item is on screen: the outgoing item is gone, so preload the next ones. */
+    private void onHandoffComplete() {
+        dismissSplash();
+        preloader.preloadAhead(playlist, currentMediaIndex, standbyVideoSlot());
+    }
 
+    private void showImage(MediaItem mediaItem, File localFile) {
+        Bitmap preloaded = preloader.takeBitmap(currentMediaId);
+        if (preloaded != null) {
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+                Glide.with(this).clear(imageView);
+                imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                imageView.setImageBitmap(preloaded);
+                imageView.setVisibility(View.VISIBLE);
+                preloader.onImageDisplayed();
+                stopActiveVideo();
+                onHandoffComplete();
+                scheduleNext();
+            });
+            return;
+        }
+
+        try {
             Glide.with(this)
-                    .load(localFile)
-                    .apply(options)
+                    .load(cacheManager.isCached(mediaItem.getUrl())
+                            ? cacheManager.getDisplayFile(mediaItem.getUrl()) : localFile)
+                    .apply(imageOptions)
                     .listener(new RequestListener<Drawable>() {
                         @Override
                         public boolean onLoadFailed(@Nullable GlideException e, Object model,
                                                     Target<Drawable> target, boolean isFirstResource) {
                             Log.e("Glide", "Image load failed");
+                            cacheManager.invalidateIfMissing(mediaItem.getUrl());
                             handler.postDelayed(nextRunnable, 1000);
                             return true;
                         }
@@ -511,17 +641,13 @@ public class MainActivity extends AppCompatActivity {
                         public boolean onResourceReady(Drawable resource, Object model,
                                                        Target<Drawable> target, DataSource dataSource,
                                                        boolean isFirstResource) {
-
-                            int imageWidth = resource.getIntrinsicWidth();
-                            int imageHeight = resource.getIntrinsicHeight();
-
-                            DisplayMetrics dm = getResources().getDisplayMetrics();
-                            float imageAspect = (float) imageWidth / imageHeight;
-                            float screenAspect = (float) dm.widthPixels / dm.heightPixels;
-
                             imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                            imageView.setVisibility(View.VISIBLE);
+                            preloader.onImageDisplayed();
+                            stopActiveVideo();
+                            onHandoffComplete();
 
-                            handler.postDelayed(nextRunnable, mediaItem.getDuration());
+                            scheduleNext();
                             return false;
                         }
                     })
@@ -532,8 +658,13 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     private void advanceToNext() {
-        currentMediaIndex++;
-        if (currentMediaIndex >= mediaList.size()) currentMediaIndex = 0;
+        if (playlist.isEmpty()) return;
+        playSlot(playbackScheduler.next(SystemClock.elapsedRealtime()));
+    }
+
+    private void playSlot(PlaybackScheduler.Slot slot) {
+        currentSlot = slot;
+        currentMediaIndex = slot.getIndex();
         showCurrentMedia();
     }
 
@@ -541,14 +672,16 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         handler.removeCallbacksAndMessages(null);
-        if (videoView != null && videoView.isPlaying()) videoView.pause();
+        countdownView.stop();
+        if (activeVideoSlot != null) activeVideoSlot.pause();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (mediaList != null && !mediaList.isEmpty()) {
-            showCurrentMedia();
+        // Before the splash ends there is nothing to resume; the first start comes from there.
+        if (timelineRunning && !playlist.isEmpty()) {
+            playSlot(playbackScheduler.resume(currentMediaIndex, SystemClock.elapsedRealtime()));
         }
     }
 
@@ -556,6 +689,11 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         handler.removeCallbacksAndMessages(null);
-        if (videoView != null) videoView.stopPlayback();
+        for (VideoSlot slot : videoSlots) {
+            slot.release();
+        }
+        if (preloader != null) preloader.clear();
+        if (syncMaster != null) syncMaster.close();
+        if (syncFollower != null) syncFollower.close();
     }
 }
\ No newline at end of file
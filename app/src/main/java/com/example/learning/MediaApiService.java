@@ -1,11 +1,16 @@
 package com.example.learning;
 
-import java.util.List;
-
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Streaming;
 
 public interface MediaApiService {
+    /** The playlist JSON, unparsed and unbuffered; see {@link PlaylistParser}. */
+    @Streaming
     @GET("/")
-    Call<List<MediaItemResponse>> getMediaItems();
+    Call<ResponseBody> streamMediaItems(
+            @Header("If-None-Match") String etag,
+            @Header("If-Modified-Since") String lastModified);
 }
@@ -0,0 +1,148 @@
+package com.example.learning;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Manifest for one cached URL, stored as a small properties sidecar next to the blob it
+ * points to. Several URLs may point at the same blob when they serve identical content.
+ * <p>
+ * Once the blob has been probed, the entry also records its display derivative: a
+ * screen-sized image, or a poster frame for a video. It also records the probed pixel size
+ * and, for videos, the duration. A width of -1 means probing failed, so it is not retried.
+ */
+public class MediaCacheEntry {
+
+    public static final String SIDECAR_SUFFIX = ".entry";
+
+    private final String url;
+    private final String blobName;
+    private final long size;
+    private final String sha256;
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private final long storedAt;
+    private final String displayName;
+    private final long displaySize;
+    private final int width;
+    private final int height;
+    private final long durationMs;
+
+    public MediaCacheEntry(String url, String blobName, long size, String sha256, String contentType,
+                           String etag, String lastModified, long storedAt) {
+        this(url, blobName, size, sha256, contentType, etag, lastModified, storedAt, null, 0, 0, 0, 0);
+    }
+
+    public MediaCacheEntry(String url, String blobName, long size, String sha256, String contentType,
+                           String etag, String lastModified, long storedAt,
+                           String displayName, long displaySize, int width, int height, long durationMs) {
+        this.url = url;
+        this.blobName = blobName;
+        this.size = size;
+        this.sha256 = sha256;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.storedAt = storedAt;
+        this.displayName = displayName;
+        this.displaySize = displaySize;
+        this.width = width;
+        this.height = height;
+        this.durationMs = durationMs;
+    }
+
+    /** Returns a copy of this entry describing the given derivative. */
+    public MediaCacheEntry withDerivative(String displayName, long displaySize, int width, int height,
+                                          long durationMs) {
+        return new MediaCacheEntry(url, blobName, size, sha256, contentType, etag, lastModified, storedAt,
+                displayName, displaySize, width, height, durationMs);
+    }
+
+    public String getUrl() { return url; }
+    public String getBlobName() { return blobName; }
+    public long getSize() { return size; }
+    public String getSha256() { return sha256; }
+    public String getContentType() { return contentType; }
+    public String getEtag() { return etag; }
+    public String getLastModified() { return lastModified; }
+    public long getStoredAt() { return storedAt; }
+    public String getDisplayName() { return displayName; }
+    public long getDisplaySize() { return displaySize; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public long getDurationMs() { return durationMs; }
+
+    /** {@code true} once the blob was probed, whether or not a derivative was written. */
+    public boolean isProbed() { return width != 0; }
+
+    /** Bytes on disk for this entry's blob plus its derivative. */
+    public long getStoredSize() { return size + displaySize; }
+
+    public void save(File sidecar) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        properties.setProperty("blob", blobName);
+        properties.setProperty("size", String.valueOf(size));
+        properties.setProperty("sha256", sha256);
+        properties.setProperty("storedAt", String.valueOf(storedAt));
+        if (contentType != null) properties.setProperty("contentType", contentType);
+        if (etag != null) properties.setProperty("etag", etag);
+        if (lastModified != null) properties.setProperty("lastModified", lastModified);
+        if (displayName != null) {
+            properties.setProperty("display", displayName);
+            properties.setProperty("displaySize", String.valueOf(displaySize));
+        }
+        if (width != 0) {
+            properties.setProperty("width", String.valueOf(width));
+            properties.setProperty("height", String.valueOf(height));
+            properties.setProperty("durationMs", String.valueOf(durationMs));
+        }
+
+        File tmp = new File(sidecar.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmp)) {
+            properties.store(output, null);
+            output.getFD().sync();
+        }
+        if (!tmp.renameTo(sidecar)) {
+            tmp.delete();
+            throw new IOException("Could not write " + sidecar.getName());
+        }
+    }
+
+    /** Returns the entry stored in {@code sidecar}, or {@code null} if it is missing or damaged. */
+    public static MediaCacheEntry load(File sidecar) {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(sidecar)) {
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+
+        String url = properties.getProperty("url");
+        String blob = properties.getProperty("blob");
+        String sha256 = properties.getProperty("sha256");
+        if (url == null || blob == null || sha256 == null) return null;
+
+        try {
+            return new MediaCacheEntry(url, blob,
+                    Long.parseLong(properties.getProperty("size", "-1")),
+                    sha256,
+                    properties.getProperty("contentType"),
+                    properties.getProperty("etag"),
+                    properties.getProperty("lastModified"),
+                    Long.parseLong(properties.getProperty("storedAt", "0")),
+                    properties.getProperty("display"),
+                    Long.parseLong(properties.getProperty("displaySize", "0")),
+                    Integer.parseInt(properties.getProperty("width", "0")),
+                    Integer.parseInt(properties.getProperty("height", "0")),
+                    Long.parseLong(properties.getProperty("durationMs", "0")));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
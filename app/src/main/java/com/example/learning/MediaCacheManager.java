@@ -1,20 +1,54 @@
 package com.example.learning;
 
 import android.content.Context;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 public class MediaCacheManager {
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 3;
+    private static final int DOWNLOAD_ATTEMPTS_WITHOUT_PROGRESS = 5;
+    private static final long DOWNLOAD_RETRY_DELAY_MS = 2000;
+    private static final String DOWNLOAD_SUFFIX = ".download";
+    private static final String JOURNAL_NAME = "index.journal";
+    private static final int JOURNAL_SLACK_RECORDS = 64;
+    // Without cache.maxBytes, the cache may take this share of its current size plus the free space.
+    private static final double DEFAULT_CACHE_SHARE_OF_SPACE = 0.5;
+
     private static MediaCacheManager instance;
     private final File cacheDir;
-    private final Set<String> downloadingUrls;
+    private final Map<String, InFlightDownload> downloadingUrls;
     private final OkHttpClient httpClient;
+    private final BandwidthLimiter bandwidth;
+    private final MediaDownloader downloader;
+    private final DownloadScheduler scheduler;
+    private final CacheIndex cacheIndex;
+    private final Map<String, MediaCacheEntry> entriesByUrl;
+    private final Set<String> pinnedUrls;
+    private final CacheJournal journal;
+    private final ExecutorService maintenanceExecutor;
+    private final DerivativeGenerator derivatives;
+    private final long maxCacheBytes;
 
     public static synchronized MediaCacheManager getInstance(Context context) {
         if (instance == null) {
@@ -26,67 +60,272 @@ public class MediaCacheManager {
     private MediaCacheManager(Context context) {
         cacheDir = new File(context.getFilesDir(), "media_cache");
         if (!cacheDir.exists()) cacheDir.mkdirs();
-        downloadingUrls = new HashSet<>();
-        httpClient = new OkHttpClient();
+        downloadingUrls = new HashMap<>();
+        httpClient = NetworkClient.media();
+        Properties properties = PropertiesLoader.loadProperties(context, R.raw.media);
+        bandwidth = new BandwidthLimiter(BandwidthPolicy.fromProperties(properties));
+        downloader = new MediaDownloader(httpClient, bandwidth,
+                DOWNLOAD_ATTEMPTS_WITHOUT_PROGRESS, DOWNLOAD_RETRY_DELAY_MS);
+        scheduler = new DownloadScheduler(DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+        cacheIndex = new CacheIndex();
+        entriesByUrl = new ConcurrentHashMap<>();
+        pinnedUrls = new HashSet<>();
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        derivatives = new DerivativeGenerator(dm.widthPixels, dm.heightPixels);
+        maintenanceExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "media-cache-maintenance");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        journal = new CacheJournal(new File(cacheDir, JOURNAL_NAME));
+        if (!loadJournal()) {
+            loadIndex();
+            compactJournal();
+        }
+        maxCacheBytes = readMaxCacheBytes(properties);
+        Log.d("MediaCache", "Cache limit " + maxCacheBytes / (1024 * 1024) + " MB, using "
+                + cacheIndex.getTotalBytes() / (1024 * 1024) + " MB");
+        scheduleTrim();
+        scheduleMissingDerivatives();
+    }
+
+    /**
+     * {@code cache.maxBytes} from media.properties; if it is 0 or missing, a share of what
+     * the cache could grow to, its current size plus the free space on its volume.
+     */
+    private long readMaxCacheBytes(Properties properties) {
+        long configured = 0;
+        try {
+            configured = Long.parseLong(properties.getProperty("cache.maxBytes", "0").trim());
+        } catch (NumberFormatException e) {
+            Log.e("MediaCache", "Invalid cache.maxBytes, using a share of the free space", e);
+        }
+        if (configured > 0) return configured;
+        return (long) ((cacheDir.getUsableSpace() + cacheIndex.getTotalBytes()) * DEFAULT_CACHE_SHARE_OF_SPACE);
     }
 
+    /**
+     * Returns the cached blob for {@code url}. For URLs that are not cached yet the returned
+     * file does not exist.
+     */
     public File getMediaFile(String url) {
-        String filename = generateFilename(url);
-        return new File(cacheDir, filename);
+        MediaCacheEntry entry = entriesByUrl.get(url);
+        if (entry == null) return new File(cacheDir, CacheKeys.urlKey(url));
+
+        cacheIndex.touch(entry.getBlobName(), System.currentTimeMillis());
+        return new File(cacheDir, entry.getBlobName());
+    }
+
+    /**
+     * Returns the file playback should read for an image: the screen-sized derivative if
+     * one was generated, otherwise the original blob.
+     */
+    public File getDisplayFile(String url) {
+        File derivative = getDerivativeFile(url);
+        return derivative != null ? derivative : getMediaFile(url);
+    }
+
+    /** Returns the poster frame of a cached video, or {@code null} if there is none yet. */
+    public File getPosterFile(String url) {
+        return getDerivativeFile(url);
     }
 
+    private File getDerivativeFile(String url) {
+        MediaCacheEntry entry = entriesByUrl.get(url);
+        if (entry == null || entry.getDisplayName() == null) return null;
+
+        cacheIndex.touch(entry.getBlobName(), System.currentTimeMillis());
+        return new File(cacheDir, entry.getDisplayName());
+    }
+
+    public MediaCacheEntry getEntry(String url) {
+        return entriesByUrl.get(url);
+    }
+
+    /** In-memory lookup; the journal loaded at startup is trusted instead of stat-ing files. */
     public boolean isCached(String url) {
-        return getMediaFile(url).exists();
+        return entriesByUrl.containsKey(url);
+    }
+
+    /**
+     * Called when playback could not open a cached file. If the blob vanished from disk
+     * behind the journal's back, the entry is dropped so the next pass downloads it again.
+     */
+    public void invalidateIfMissing(String url) {
+        MediaCacheEntry entry = entriesByUrl.get(url);
+        if (entry != null && !new File(cacheDir, entry.getBlobName()).exists()) {
+            removeBlob(entry.getBlobName());
+        }
+    }
+
+    /** Re-hashes the cached blob for {@code url} and drops the entry if it does not match. */
+    public boolean verifyIntegrity(String url) {
+        MediaCacheEntry entry = entriesByUrl.get(url);
+        if (entry == null) return false;
+
+        File blob = new File(cacheDir, entry.getBlobName());
+        MessageDigest digest = CacheKeys.newSha256();
+        try (InputStream input = new FileInputStream(blob)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            removeBlob(entry.getBlobName());
+            return false;
+        }
+
+        if (!CacheKeys.toHex(digest.digest()).equals(entry.getSha256())) {
+            Log.e("MediaCache", "Checksum mismatch for " + url);
+            removeBlob(entry.getBlobName());
+            return false;
+        }
+        return true;
     }
 
     public void downloadMediaAsync(String url, DownloadListener listener) {
+        downloadMediaAsync(url, DownloadScheduler.Priority.PREFETCH, listener);
+    }
+
+    public void downloadMediaAsync(String url, DownloadScheduler.Priority priority, DownloadListener listener) {
         if (isCached(url)) {
             listener.onSuccess(getMediaFile(url));
             return;
         }
 
+        boolean joined;
+        CompletableFuture<File> future;
         synchronized (downloadingUrls) {
-            if (downloadingUrls.contains(url)) {
-                listener.onProgress();
-                return;
+            joined = downloadingUrls.containsKey(url);
+            future = downloadMedia(url, priority);
+        }
+        if (joined) listener.onProgress();
+
+        future.whenComplete((file, error) -> {
+            if (error == null) {
+                listener.onSuccess(file);
+            } else {
+                listener.onError(unwrap(error));
             }
-            downloadingUrls.add(url);
-        }
-
-        new Thread(() -> {
-            try {
-                File outputFile = getMediaFile(url);
-                Request request = new Request.Builder().url(url).build();
-                Response response = httpClient.newCall(request).execute();
-
-                if (response.isSuccessful() && response.body() != null) {
-                    InputStream input = response.body().byteStream();
-                    FileOutputStream output = new FileOutputStream(outputFile);
-                    byte[] buffer = new byte[8192];
-                    int read;
-                    while ((read = input.read(buffer)) != -1) {
-                        output.write(buffer, 0, read);
-                    }
-                    output.close();
-                    input.close();
+        });
+    }
 
-                    synchronized (downloadingUrls) {
-                        downloadingUrls.remove(url);
-                    }
-                    listener.onSuccess(outputFile);
-                } else {
-                    synchronized (downloadingUrls) {
-                        downloadingUrls.remove(url);
-                    }
-                    listener.onError(new Exception("Download failed: " + response.code()));
-                }
-            } catch (Exception e) {
-                synchronized (downloadingUrls) {
-                    downloadingUrls.remove(url);
-                }
-                listener.onError(e);
+    /**
+     * Returns the shared future for {@code url}. Concurrent callers for the same URL
+     * attach to one transfer; a more urgent caller promotes the queued transfer.
+     * <p>
+     * A finished download registers its entry before it leaves {@code downloadingUrls}, so
+     * checking both under that lock never misses it and never starts a second transfer.
+     */
+    public CompletableFuture<File> downloadMedia(String url, DownloadScheduler.Priority priority) {
+        synchronized (downloadingUrls) {
+            if (isCached(url)) {
+                return CompletableFuture.completedFuture(getMediaFile(url));
+            }
+            InFlightDownload inFlight = downloadingUrls.get(url);
+            if (inFlight != null) {
+                scheduler.promote(inFlight.task, priority);
+                return inFlight.future;
             }
-        }).start();
+
+            CompletableFuture<File> future = new CompletableFuture<>();
+            DownloadScheduler.Task task = scheduler.submit(url, priority,
+                    t -> performDownload(t, future));
+            downloadingUrls.put(url, new InFlightDownload(task, future));
+            return future;
+        }
+    }
+
+    public void cancelDownload(String url) {
+        InFlightDownload inFlight;
+        synchronized (downloadingUrls) {
+            inFlight = downloadingUrls.get(url);
+        }
+        if (inFlight != null) scheduler.cancel(inFlight.task);
+    }
+
+    public BandwidthPolicy getBandwidthPolicy() {
+        return bandwidth.getPolicy();
+    }
+
+    /** Current download cap in bytes per second; 0 is unlimited. */
+    public long getDownloadRateLimit() {
+        return bandwidth.getRate();
+    }
+
+    /** Download rate achieved by all transfers together over the last few seconds. */
+    public long getDownloadThroughput() {
+        return bandwidth.getThroughput();
+    }
+
+    private void performDownload(DownloadScheduler.Task task, CompletableFuture<File> future) {
+        String url = task.getKey();
+        File download = new File(cacheDir, CacheKeys.urlKey(url) + DOWNLOAD_SUFFIX);
+        try {
+            if (task.isCancelled()) throw new CancellationException("Download cancelled: " + url);
+
+            long startedAt = System.nanoTime();
+            MediaDownloader.Result result = downloader.download(url, download, task);
+            long elapsedMs = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+            Log.d("MediaCache", "Downloaded " + result.getSize() / 1024 + " KB in " + elapsedMs + " ms ("
+                    + result.getSize() * 1000 / 1024 / elapsedMs + " KB/s, cap "
+                    + bandwidth.getRate() / 1024 + " KB/s): " + url);
+            File blob = storeBlob(download, result, url);
+
+            finishDownload(url);
+            future.complete(blob);
+            scheduleTrim();
+            scheduleDerivative(blob.getName());
+        } catch (Exception e) {
+            finishDownload(url);
+            future.completeExceptionally(task.isCancelled()
+                    ? new CancellationException("Download cancelled: " + url) : e);
+        }
+    }
+
+    /**
+     * Moves a finished download to its content-addressed name and registers it for
+     * {@code url}. If another URL already stored identical bytes, the new copy is dropped
+     * and the existing blob is shared.
+     * <p>
+     * The URL entry and its pin are in place before the blob enters the index, where trim
+     * can pick it; eviction then removes the entry with it instead of leaving it pointing
+     * at a deleted file.
+     */
+    private File storeBlob(File download, MediaDownloader.Result result, String url) throws IOException {
+        String blobName = result.getSha256() + CacheKeys.extensionFor(result.getContentType(), url);
+        File blob = new File(cacheDir, blobName);
+        MediaCacheEntry entry = new MediaCacheEntry(url, blobName, result.getSize(),
+                result.getSha256(), result.getContentType(), result.getEtag(),
+                result.getLastModified(), System.currentTimeMillis());
+
+        synchronized (cacheIndex) {
+            if (blob.exists() && blob.length() == result.getSize()) {
+                download.delete();
+            } else if (!download.renameTo(blob)) {
+                throw new IOException("Could not store " + blobName);
+            }
+            entry.save(new File(cacheDir, CacheKeys.urlKey(url) + MediaCacheEntry.SIDECAR_SUFFIX));
+            entriesByUrl.put(url, entry);
+            appendToJournal(entry);
+            updatePins();
+            cacheIndex.put(blobName, result.getSize(), System.currentTimeMillis());
+        }
+        return blob;
+    }
+
+    private void finishDownload(String url) {
+        synchronized (downloadingUrls) {
+            downloadingUrls.remove(url);
+        }
+    }
+
+    private static Exception unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof Exception ? (Exception) error : new Exception(error);
     }
 
     public void clearCache() {
@@ -96,28 +335,267 @@ public class MediaCacheManager {
                 file.delete();
             }
         }
+        entriesByUrl.clear();
+        cacheIndex.clear();
+        compactJournal();
     }
 
+    /** Size of all completed cache entries; read from the index without touching disk. */
     public long getCacheSize() {
-        long size = 0;
-        File[] files = cacheDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                size += file.length();
+        return cacheIndex.getTotalBytes();
+    }
+
+    public long getMaxCacheSize() {
+        return maxCacheBytes;
+    }
+
+    /** Pins the given URLs (typically the current playlist); everything else may be evicted. */
+    public void pinUrls(Collection<String> urls) {
+        synchronized (pinnedUrls) {
+            pinnedUrls.clear();
+            pinnedUrls.addAll(urls);
+        }
+        updatePins();
+        scheduleTrim();
+    }
+
+    /**
+     * Pins {@code urls} in addition to the current pins. Background work uses this, since
+     * its list may be older than the playlist on screen, which must stay pinned.
+     */
+    public void addPinnedUrls(Collection<String> urls) {
+        synchronized (pinnedUrls) {
+            if (!pinnedUrls.addAll(urls)) return;
+        }
+        updatePins();
+    }
+
+    private void updatePins() {
+        List<String> blobNames = new ArrayList<>();
+        synchronized (pinnedUrls) {
+            for (String url : pinnedUrls) {
+                MediaCacheEntry entry = entriesByUrl.get(url);
+                if (entry != null) blobNames.add(entry.getBlobName());
+            }
+        }
+        cacheIndex.setPinned(blobNames);
+    }
+
+    private void scheduleTrim() {
+        maintenanceExecutor.execute(this::trimToSize);
+    }
+
+    private void trimToSize() {
+        if (journal.getRecordCount() > 2 * entriesByUrl.size() + JOURNAL_SLACK_RECORDS) {
+            compactJournal();
+        }
+
+        CacheIndex.Entry candidate;
+        while ((candidate = cacheIndex.nextEvictionCandidate(maxCacheBytes)) != null) {
+            if (!removeBlob(candidate.getName())) {
+                Log.e("MediaCache", "Failed to evict " + candidate.getName());
+                return;
             }
+            Log.d("MediaCache", "Evicted " + candidate.getName() + " (" + candidate.getSize() + " B)");
         }
-        return size;
     }
 
-    private String generateFilename(String url) {
-        return String.valueOf(url.hashCode()) + getFileExtension(url);
+    private void scheduleMissingDerivatives() {
+        Set<String> blobNames = new HashSet<>();
+        for (MediaCacheEntry entry : entriesByUrl.values()) {
+            if (!entry.isProbed()) blobNames.add(entry.getBlobName());
+        }
+        for (String blobName : blobNames) {
+            scheduleDerivative(blobName);
+        }
+    }
+
+    /**
+     * Queues derivative generation for a stored blob on the maintenance thread, so a
+     * finished download is handed to playback without waiting for it.
+     */
+    private void scheduleDerivative(String blobName) {
+        maintenanceExecutor.execute(() -> generateDerivative(blobName));
+    }
+
+    private void generateDerivative(String blobName) {
+        MediaCacheEntry source = null;
+        for (MediaCacheEntry entry : entriesByUrl.values()) {
+            if (entry.getBlobName().equals(blobName)) {
+                source = entry;
+                break;
+            }
+        }
+        if (source == null || source.isProbed()) return;
+
+        DerivativeGenerator.Result result = derivatives.generate(
+                new File(cacheDir, blobName), source.getSha256(), source.getContentType());
+
+        synchronized (cacheIndex) {
+            if (!cacheIndex.contains(blobName)) {
+                // Evicted while the derivative was being written.
+                if (result != null && result.getFileName() != null) new File(cacheDir, result.getFileName()).delete();
+                return;
+            }
+            long storedSize = 0;
+            for (MediaCacheEntry entry : new ArrayList<>(entriesByUrl.values())) {
+                if (!entry.getBlobName().equals(blobName)) continue;
+
+                MediaCacheEntry updated = result != null
+                        ? entry.withDerivative(result.getFileName(), result.getFileSize(),
+                                result.getWidth(), result.getHeight(), result.getDurationMs())
+                        : entry.withDerivative(null, 0, -1, -1, 0);
+                try {
+                    updated.save(new File(cacheDir, CacheKeys.urlKey(entry.getUrl()) + MediaCacheEntry.SIDECAR_SUFFIX));
+                } catch (IOException e) {
+                    Log.e("MediaCache", "Failed to record derivative for " + entry.getUrl(), e);
+                }
+                entriesByUrl.put(entry.getUrl(), updated);
+                appendToJournal(updated);
+                storedSize = updated.getStoredSize();
+            }
+            if (storedSize > 0) cacheIndex.setSize(blobName, storedSize);
+        }
+        if (result != null && result.getFileName() != null) {
+            Log.d("MediaCache", "Derivative " + result.getFileName() + " (" + result.getFileSize() + " B) for " + blobName);
+            scheduleTrim();
+        }
     }
 
-    private String getFileExtension(String url) {
-        if (url.contains(".mp4") || url.contains(".webm") || url.contains(".avi")) {
-            return ".mp4";
+    /** Deletes a blob and its derivative together with the manifests of every URL that points at it. */
+    private boolean removeBlob(String blobName) {
+        synchronized (cacheIndex) {
+            for (MediaCacheEntry entry : new ArrayList<>(entriesByUrl.values())) {
+                if (entry.getBlobName().equals(blobName)) {
+                    if (entry.getDisplayName() != null) new File(cacheDir, entry.getDisplayName()).delete();
+                    entriesByUrl.remove(entry.getUrl());
+                    try {
+                        journal.appendRemove(entry.getUrl());
+                    } catch (IOException e) {
+                        Log.e("MediaCache", "Failed to journal removal of " + entry.getUrl(), e);
+                    }
+                    new File(cacheDir, CacheKeys.urlKey(entry.getUrl()) + MediaCacheEntry.SIDECAR_SUFFIX).delete();
+                }
+            }
+            File blob = new File(cacheDir, blobName);
+            if (!blob.delete() && blob.exists()) return false;
+            cacheIndex.remove(blobName);
+            return true;
+        }
+    }
+
+    private boolean loadJournal() {
+        Map<String, CacheJournal.Record> records;
+        try {
+            records = journal.read();
+        } catch (IOException e) {
+            Log.w("MediaCache", "Rebuilding cache index: " + e.getMessage());
+            return false;
+        }
+
+        List<CacheJournal.Record> byAccess = new ArrayList<>(records.values());
+        Collections.sort(byAccess, (a, b) -> Long.compare(a.getLastAccess(), b.getLastAccess()));
+        for (CacheJournal.Record record : byAccess) {
+            MediaCacheEntry entry = record.getEntry();
+            entriesByUrl.put(entry.getUrl(), entry);
+            cacheIndex.put(entry.getBlobName(), entry.getStoredSize(), record.getLastAccess());
+        }
+        return true;
+    }
+
+    private void appendToJournal(MediaCacheEntry entry) {
+        try {
+            journal.appendPut(entry, System.currentTimeMillis());
+        } catch (IOException e) {
+            Log.e("MediaCache", "Failed to journal " + entry.getUrl(), e);
+        }
+    }
+
+    /** Rewrites the journal from memory, also persisting the current LRU access times. */
+    private void compactJournal() {
+        Map<String, Long> lastAccessByBlob = new HashMap<>();
+        for (CacheIndex.Entry indexEntry : cacheIndex.snapshot()) {
+            lastAccessByBlob.put(indexEntry.getName(), indexEntry.getLastAccess());
+        }
+
+        List<CacheJournal.Record> records = new ArrayList<>(entriesByUrl.size());
+        for (MediaCacheEntry entry : entriesByUrl.values()) {
+            Long lastAccess = lastAccessByBlob.get(entry.getBlobName());
+            records.add(new CacheJournal.Record(entry, lastAccess != null ? lastAccess : entry.getStoredAt()));
+        }
+
+        try {
+            journal.rewrite(records);
+        } catch (IOException e) {
+            Log.e("MediaCache", "Failed to compact cache journal", e);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the directory when the journal is missing or corrupt.
+     * Reads every manifest sidecar and keeps the ones whose blob is present with the
+     * recorded size. Files no manifest refers to (including pre-manifest cache files)
+     * are deleted; partial downloads are kept so they can resume. An entry whose
+     * derivative is gone is marked unprobed so the derivative is generated again.
+     */
+    private void loadIndex() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+
+        Map<String, File> blobs = new HashMap<>();
+        List<File> sidecars = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(JOURNAL_NAME)) {
+                continue;
+            } else if (name.endsWith(MediaCacheEntry.SIDECAR_SUFFIX)) {
+                sidecars.add(file);
+            } else if (!MediaDownloader.isTemporaryFile(name) && !name.endsWith(DOWNLOAD_SUFFIX)) {
+                blobs.put(name, file);
+            }
+        }
+
+        Map<String, Long> lastAccessByBlob = new HashMap<>();
+        Map<String, Long> storedSizeByBlob = new HashMap<>();
+        Set<String> displayNames = new HashSet<>();
+        for (File sidecar : sidecars) {
+            MediaCacheEntry entry = MediaCacheEntry.load(sidecar);
+            File blob = entry != null ? blobs.get(entry.getBlobName()) : null;
+            if (blob == null || blob.length() != entry.getSize()) {
+                sidecar.delete();
+                continue;
+            }
+            File display = entry.getDisplayName() != null ? blobs.get(entry.getDisplayName()) : null;
+            if (display != null && display.length() == entry.getDisplaySize()) {
+                displayNames.add(display.getName());
+            } else if (entry.getDisplayName() != null) {
+                entry = entry.withDerivative(null, 0, 0, 0, 0);
+            }
+            entriesByUrl.put(entry.getUrl(), entry);
+            storedSizeByBlob.put(blob.getName(), entry.getStoredSize());
+            Long previous = lastAccessByBlob.get(blob.getName());
+            lastAccessByBlob.put(blob.getName(), Math.max(previous != null ? previous : 0, blob.lastModified()));
+        }
+
+        List<Map.Entry<String, Long>> byAccess = new ArrayList<>(lastAccessByBlob.entrySet());
+        Collections.sort(byAccess, (a, b) -> Long.compare(a.getValue(), b.getValue()));
+        for (Map.Entry<String, Long> e : byAccess) {
+            cacheIndex.put(e.getKey(), storedSizeByBlob.get(e.getKey()), e.getValue());
+        }
+
+        for (File blob : blobs.values()) {
+            if (!lastAccessByBlob.containsKey(blob.getName()) && !displayNames.contains(blob.getName())) blob.delete();
+        }
+    }
+
+    private static class InFlightDownload {
+        final DownloadScheduler.Task task;
+        final CompletableFuture<File> future;
+
+        InFlightDownload(DownloadScheduler.Task task, CompletableFuture<File> future) {
+            this.task = task;
+            this.future = future;
         }
-        return ".jpg";
     }
 
     public interface DownloadListener {
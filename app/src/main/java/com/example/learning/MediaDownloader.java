@@ -0,0 +1,333 @@
+package com.example.learning;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.HashingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Downloads a single URL into {@code <target>.part} and renames it to the target only
+ * once the transfer is complete. After a dropped connection the transfer resumes with
+ * {@code Range}/{@code If-Range}, using the ETag (or Last-Modified) stored next to the
+ * partial file in {@code <target>.part.meta}.
+ */
+public class MediaDownloader {
+
+    public static final String PART_SUFFIX = ".part";
+    public static final String META_SUFFIX = ".part.meta";
+
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_CONTENT_TYPE = "contentType";
+    private static final String KEY_COMMITTED = "committed";
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    private static final long COMMIT_INTERVAL_BYTES = 8 * 1024 * 1024;
+
+    private final OkHttpClient httpClient;
+    private final BandwidthLimiter limiter;
+    private final int maxAttemptsWithoutProgress;
+    private final long retryDelayMs;
+
+    public MediaDownloader(OkHttpClient httpClient, BandwidthLimiter limiter,
+                           int maxAttemptsWithoutProgress, long retryDelayMs) {
+        this.httpClient = httpClient;
+        this.limiter = limiter;
+        this.maxAttemptsWithoutProgress = maxAttemptsWithoutProgress;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public static boolean isTemporaryFile(String name) {
+        return name.endsWith(PART_SUFFIX) || name.endsWith(META_SUFFIX);
+    }
+
+    /**
+     * Downloads {@code url} to {@code target}, retrying dropped transfers. Attempts only
+     * count against the limit while no new bytes arrive, so a slow but moving transfer
+     * is never abandoned.
+     */
+    public Result download(String url, File target, DownloadScheduler.Task task) throws IOException {
+        File part = new File(target.getPath() + PART_SUFFIX);
+        File meta = new File(target.getPath() + META_SUFFIX);
+
+        int failures = 0;
+        String sha256;
+        while (true) {
+            checkCancelled(task, url);
+            long before = part.exists() ? part.length() : 0;
+            try {
+                sha256 = attempt(url, part, meta, task);
+                break;
+            } catch (CancellationException e) {
+                throw e;
+            } catch (IOException e) {
+                if (task != null && task.isCancelled()) {
+                    throw new CancellationException("Download cancelled: " + url);
+                }
+                if (e instanceof HttpStatusException && ((HttpStatusException) e).getCode() < 500) {
+                    throw e;
+                }
+                long after = part.exists() ? part.length() : 0;
+                failures = after > before ? 1 : failures + 1;
+                if (failures >= maxAttemptsWithoutProgress) throw e;
+                sleepBeforeRetry(failures);
+            }
+        }
+
+        Properties validators = readMeta(meta);
+        if (!part.renameTo(target)) {
+            throw new IOException("Could not move " + part.getName() + " to " + target.getName());
+        }
+        meta.delete();
+
+        return new Result(target.length(), sha256,
+                validators.getProperty(KEY_CONTENT_TYPE),
+                validators.getProperty(KEY_ETAG),
+                validators.getProperty(KEY_LAST_MODIFIED));
+    }
+
+    /** Returns the hex SHA-256 of the whole body once the part file holds all of it. */
+    private String attempt(String url, File part, File meta, DownloadScheduler.Task task) throws IOException {
+        Properties validators = readMeta(meta);
+        String validator = validators.getProperty(KEY_ETAG, validators.getProperty(KEY_LAST_MODIFIED));
+        long offset = part.exists() ? part.length() : 0;
+
+        String committed = validators.getProperty(KEY_COMMITTED);
+        if (offset > 0 && committed != null) {
+            // A preallocated file left behind by a killed process: only the bytes recorded
+            // as written are known to be good, the rest is unwritten space.
+            offset = Math.min(offset, Long.parseLong(committed));
+            try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+                file.setLength(offset);
+            }
+            setCommitted(meta, -1);
+        }
+        if (offset > 0 && validator == null) {
+            // Without a validator we cannot prove the remote file is unchanged.
+            part.delete();
+            offset = 0;
+        }
+
+        // Ranges address raw bytes, so transparent gzip must stay off.
+        Request.Builder builder = new Request.Builder().url(url).header("Accept-Encoding", "identity");
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+            builder.header("If-Range", validator);
+        }
+
+        Call call = httpClient.newCall(builder.build());
+        if (task != null) task.setCancelHook(call::cancel);
+
+        try (Response response = call.execute()) {
+            ResponseBody body = response.body();
+            int code = response.code();
+
+            if (code == 416) {
+                long expected = Long.parseLong(validators.getProperty(KEY_LENGTH, "-1"));
+                if (expected == offset) return sha256Of(part);
+                part.delete();
+                throw new IOException("Range not satisfiable for " + url);
+            }
+            if (!response.isSuccessful() || body == null) {
+                throw new HttpStatusException(code);
+            }
+
+            boolean resumed;
+            long expectedLength;
+            if (code == 206) {
+                if (offset == 0 || !rangeStartsAt(response.header("Content-Range"), offset)) {
+                    part.delete();
+                    meta.delete();
+                    throw new IOException("Unexpected Content-Range for " + url);
+                }
+                resumed = true;
+                expectedLength = Long.parseLong(validators.getProperty(KEY_LENGTH, "-1"));
+            } else {
+                resumed = false;
+                offset = 0;
+                expectedLength = body.contentLength();
+                writeMeta(meta, response.header("ETag"), response.header("Last-Modified"),
+                        response.header("Content-Type"), expectedLength);
+            }
+
+            // A fresh body is hashed on the fly; a resumed one is re-hashed from disk at the
+            // end, since the digest state of the earlier attempt is gone.
+            Source throttled = limiter.throttle(body.source(), task);
+            HashingSource hashing = resumed ? null : HashingSource.sha256(throttled);
+            BufferedSource source = Okio.buffer(hashing != null ? hashing : throttled);
+            long length = transfer(source, part, meta, offset, resumed ? -1 : expectedLength, task, url);
+
+            if (expectedLength >= 0 && length != expectedLength) {
+                throw new IOException("Incomplete download: " + length + "/" + expectedLength);
+            }
+            return hashing != null ? hashing.hash().hex() : sha256Of(part);
+        }
+    }
+
+    /**
+     * Streams {@code source} into {@code part} starting at {@code position} with
+     * {@link FileChannel#transferFrom}. The source is not a file, so each chunk is still
+     * copied through a temporary buffer inside the channel. When the total length is known
+     * the file is preallocated so the filesystem can lay it out contiguously; every
+     * {@link #COMMIT_INTERVAL_BYTES} the bytes written so far are synced and recorded in
+     * the meta file, so a killed process resumes from there. The file is always truncated
+     * back to the bytes actually written before returning.
+     */
+    private static long transfer(BufferedSource source, File part, File meta, long position,
+                                 long preallocate, DownloadScheduler.Task task, String url) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            FileChannel channel = file.getChannel();
+            if (preallocate > 0) {
+                setCommitted(meta, position);
+                file.setLength(preallocate);
+            } else {
+                file.setLength(position);
+            }
+
+            try {
+                long committed = position;
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                    position += transferred;
+                    if (preallocate > 0 && position - committed >= COMMIT_INTERVAL_BYTES) {
+                        channel.force(false);
+                        setCommitted(meta, position);
+                        committed = position;
+                    }
+                    checkCancelled(task, url);
+                }
+            } finally {
+                file.setLength(position);
+                if (preallocate > 0) setCommitted(meta, -1);
+            }
+            return position;
+        }
+    }
+
+    private static boolean rangeStartsAt(String contentRange, long offset) {
+        // Content-Range: bytes <start>-<end>/<total>
+        if (contentRange == null || !contentRange.startsWith("bytes ")) return false;
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) return false;
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim()) == offset;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Properties readMeta(File meta) {
+        Properties properties = new Properties();
+        if (!meta.exists()) return properties;
+        try (InputStream input = new FileInputStream(meta)) {
+            properties.load(input);
+        } catch (IOException e) {
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private static String sha256Of(File file) throws IOException {
+        try (HashingSource hashing = HashingSource.sha256(Okio.source(file));
+             BufferedSource source = Okio.buffer(hashing)) {
+            source.readAll(Okio.blackhole());
+            return hashing.hash().hex();
+        }
+    }
+
+    /** Records how many bytes of a preallocated part file are written; -1 once it is exact. */
+    private static void setCommitted(File meta, long committed) throws IOException {
+        Properties properties = readMeta(meta);
+        if (committed >= 0) {
+            properties.setProperty(KEY_COMMITTED, String.valueOf(committed));
+        } else {
+            properties.remove(KEY_COMMITTED);
+        }
+        storeMeta(meta, properties);
+    }
+
+    private static void writeMeta(File meta, String etag, String lastModified, String contentType,
+                                  long length) throws IOException {
+        Properties properties = new Properties();
+        if (etag != null) properties.setProperty(KEY_ETAG, etag);
+        if (lastModified != null) properties.setProperty(KEY_LAST_MODIFIED, lastModified);
+        if (contentType != null) properties.setProperty(KEY_CONTENT_TYPE, contentType);
+        properties.setProperty(KEY_LENGTH, String.valueOf(length));
+        storeMeta(meta, properties);
+    }
+
+    /** Replaces {@code meta} atomically, so a kill mid-write never loses the validators. */
+    private static void storeMeta(File meta, Properties properties) throws IOException {
+        File tmp = new File(meta.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmp)) {
+            properties.store(output, null);
+        }
+        if (!tmp.renameTo(meta)) {
+            tmp.delete();
+            throw new IOException("Could not write " + meta.getName());
+        }
+    }
+
+    private static void checkCancelled(DownloadScheduler.Task task, String url) {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Download cancelled: " + url);
+        }
+    }
+
+    private void sleepBeforeRetry(int failures) throws IOException {
+        try {
+            Thread.sleep(retryDelayMs * failures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    public static class Result {
+        private final long size;
+        private final String sha256;
+        private final String contentType;
+        private final String etag;
+        private final String lastModified;
+
+        Result(long size, String sha256, String contentType, String etag, String lastModified) {
+            this.size = size;
+            this.sha256 = sha256;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize() { return size; }
+        public String getSha256() { return sha256; }
+        public String getContentType() { return contentType; }
+        public String getEtag() { return etag; }
+        public String getLastModified() { return lastModified; }
+    }
+
+    /** Non-2xx response; 4xx responses are not worth retrying. */
+    public static class HttpStatusException extends IOException {
+        private final int code;
+
+        public HttpStatusException(int code) {
+            super("Download failed: " + code);
+            this.code = code;
+        }
+
+        public int getCode() { return code; }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prepares the next items of the playlist while the current one is on screen: the next
+ * {@code lookahead} images are decoded to bitmaps and the first upcoming video is
+ * prepared on the standby {@link VideoSlot}. If the next item is not cached yet, its
+ * download is started (or promoted) at playback priority.
+ */
+public class MediaPreloader {
+
+    private final Context context;
+    private final MediaCacheManager cacheManager;
+    private final int lookahead;
+    private final RequestOptions imageOptions;
+    private final Map<String, FutureTarget<Bitmap>> pendingImages = new HashMap<>();
+    private FutureTarget<Bitmap> takenImage;
+    private FutureTarget<Bitmap> displayedImage;
+
+    public MediaPreloader(Context context, MediaCacheManager cacheManager, int lookahead,
+                          RequestOptions imageOptions) {
+        this.context = context.getApplicationContext();
+        this.cacheManager = cacheManager;
+        this.lookahead = Math.max(0, lookahead);
+        this.imageOptions = imageOptions;
+    }
+
+    /**
+     * Preloads the items after {@code currentIndex}. {@code standbySlot} is the video slot
+     * that is not on screen; the first upcoming video is prepared there.
+     */
+    public void preloadAhead(Playlist playlist, int currentIndex, VideoSlot standbySlot) {
+        if (playlist.isEmpty()) return;
+
+        Set<String> wanted = new HashSet<>();
+        boolean videoQueued = false;
+        String currentId = playlist.getId(Math.max(0, currentIndex) % playlist.size());
+
+        int steps = Math.min(lookahead, playlist.size() - 1);
+        for (int step = 1; step <= steps; step++) {
+            int index = (currentIndex + step) % playlist.size();
+            String id = playlist.getId(index);
+            MediaItem item = playlist.get(index);
+            if (id.equals(currentId)) continue;
+            if (!cacheManager.isCached(item.getUrl())) {
+                // Background prefetch may be deferred or queued; the next item cannot wait.
+                if (step == 1) cacheManager.downloadMedia(item.getUrl(), DownloadScheduler.Priority.PLAYBACK);
+                continue;
+            }
+
+            if (item.getType() == MediaType.VIDEO) {
+                if (!videoQueued && standbySlot != null) {
+                    videoQueued = true;
+                    if (!standbySlot.holds(id)) {
+                        standbySlot.prepare(id, cacheManager.getMediaFile(item.getUrl()));
+                    }
+                }
+            } else {
+                wanted.add(id);
+                if (!pendingImages.containsKey(id)) {
+                    pendingImages.put(id, decode(cacheManager.getDisplayFile(item.getUrl())));
+                }
+            }
+        }
+
+        Iterator<Map.Entry<String, FutureTarget<Bitmap>>> iterator = pendingImages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, FutureTarget<Bitmap>> entry = iterator.next();
+            if (!wanted.contains(entry.getKey())) {
+                Glide.with(context).clear(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the decoded bitmap for {@code id} if it is already finished, without
+     * blocking. The caller must call {@link #onImageDisplayed()} once it is on screen.
+     */
+    public Bitmap takeBitmap(String id) {
+        FutureTarget<Bitmap> target = pendingImages.get(id);
+        if (target == null || !target.isDone() || target.isCancelled()) return null;
+
+        pendingImages.remove(id);
+        try {
+            Bitmap bitmap = target.get();
+            takenImage = target;
+            return bitmap;
+        } catch (Exception e) {
+            Log.e("Preload", "Preloaded decode failed for " + id, e);
+            Glide.with(context).clear(target);
+            return null;
+        }
+    }
+
+    /**
+     * Called after the ImageView switched to new content; the previously displayed
+     * preloaded bitmap is no longer referenced and goes back to Glide.
+     */
+    public void onImageDisplayed() {
+        if (displayedImage != null) Glide.with(context).clear(displayedImage);
+        displayedImage = takenImage;
+        takenImage = null;
+    }
+
+    public void clear() {
+        for (FutureTarget<Bitmap> target : pendingImages.values()) {
+            Glide.with(context).clear(target);
+        }
+        pendingImages.clear();
+        if (takenImage != null) Glide.with(context).clear(takenImage);
+        if (displayedImage != null) Glide.with(context).clear(displayedImage);
+        takenImage = null;
+        displayedImage = null;
+    }
+
+    private FutureTarget<Bitmap> decode(File file) {
+        return Glide.with(context)
+                .asBitmap()
+                .load(file)
+                .apply(imageOptions)
+                .submit();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.learning;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.brotli.BrotliInterceptor;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * The app's one HTTP stack. The API and the media cache get differently configured
+ * clients derived from the same base, so they share its connection pool, dispatcher and
+ * threads: a playlist request reuses the HTTP/2 connection prefetch already opened to
+ * the same host instead of doing its own handshake.
+ * <p>
+ * Only the API client has an HTTP cache and compression. Media is stored by
+ * {@link MediaCacheManager} and requested with {@code Accept-Encoding: identity} so that
+ * ranges stay valid. Media calls have no overall deadline; a transfer of several hundred
+ * MB only fails if no bytes arrive for {@link #MEDIA_READ_TIMEOUT_S} seconds.
+ */
+public final class NetworkClient {
+
+    /** Idle connections kept for reuse; covers every concurrent download plus the API. */
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    private static final long CONNECT_TIMEOUT_S = 15;
+
+    private static final long API_TIMEOUT_S = 30;
+    private static final long API_CACHE_BYTES = 5 * 1024 * 1024;
+
+    static final long MEDIA_READ_TIMEOUT_S = 60;
+    private static final long MEDIA_WRITE_TIMEOUT_S = 30;
+
+    private static OkHttpClient base;
+    private static OkHttpClient api;
+    private static OkHttpClient media;
+
+    private NetworkClient() {
+    }
+
+    /** Client for the playlist API: HTTP cache, Brotli/gzip, 30 s for the whole call. */
+    public static synchronized OkHttpClient api(Context context) {
+        if (api == null) {
+            HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+            logging.setLevel(BuildConfig.DEBUG ? HttpLoggingInterceptor.Level.BASIC : HttpLoggingInterceptor.Level.NONE);
+
+            api = base().newBuilder()
+                    .cache(new Cache(new File(context.getApplicationContext().getCacheDir(), "http-api"), API_CACHE_BYTES))
+                    .addInterceptor(BrotliInterceptor.INSTANCE)
+                    .addInterceptor(logging)
+                    .readTimeout(API_TIMEOUT_S, TimeUnit.SECONDS)
+                    .callTimeout(API_TIMEOUT_S, TimeUnit.SECONDS)
+                    .build();
+        }
+        return api;
+    }
+
+    /** Client for media downloads: no call deadline, only an inactivity timeout per read. */
+    public static synchronized OkHttpClient media() {
+        if (media == null) {
+            media = base().newBuilder()
+                    .readTimeout(MEDIA_READ_TIMEOUT_S, TimeUnit.SECONDS)
+                    .writeTimeout(MEDIA_WRITE_TIMEOUT_S, TimeUnit.SECONDS)
+                    .callTimeout(0, TimeUnit.SECONDS)
+                    .build();
+        }
+        return media;
+    }
+
+    private static OkHttpClient base() {
+        if (base == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+            base = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .dispatcher(dispatcher)
+                    // HTTP/2 is negotiated over TLS where the CDN offers it; one connection
+                    // then carries all concurrent downloads to that host.
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(CONNECT_TIMEOUT_S, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+        }
+        return base;
+    }
+}
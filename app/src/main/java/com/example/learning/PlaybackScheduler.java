@@ -0,0 +1,175 @@
+package com.example.learning;
+
+/**
+ * Places every playlist item on a fixed timeline so playback cannot drift.
+ * <p>
+ * Item {@code i} of cycle {@code k} starts at {@code epoch + k * cycleLength + offset(i)}.
+ * Times are in milliseconds on a monotonic clock; the app uses
+ * {@code SystemClock.elapsedRealtime()}. When an item finishes loading has no effect
+ * on when the following items start.
+ * <p>
+ * Two mechanisms keep the screen on schedule:
+ * <ul>
+ *   <li>Lead time. Each advance starts {@link #getLeadMs()} before the boundary. The
+ *   lead is a running average of how late previous handoffs were, so decode latency
+ *   is absorbed instead of pushing the loop back.</li>
+ *   <li>Catch-up. If playback has fallen behind, {@link #next(long)} returns whichever
+ *   item the timeline says is on screen now. The items in between are skipped and the
+ *   returned item is shortened to its remaining time.</li>
+ * </ul>
+ * The epoch is either set locally ({@link #continueAfter}) or derived from a clock that
+ * several screens share ({@link #anchorToClock}). With a shared clock, screens running
+ * the same playlist change items together.
+ */
+public class PlaybackScheduler {
+
+    private static final long MIN_DURATION_MS = 1;
+    private static final double LEAD_SMOOTHING = 0.25;
+
+    public static final class Slot {
+        private final int index;
+        private final long start;
+        private final long end;
+
+        Slot(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getIndex() { return index; }
+        public long getStart() { return start; }
+        public long getEnd() { return end; }
+
+        @Override
+        public String toString() {
+            return "Slot{" + index + " " + start + ".." + end + "}";
+        }
+    }
+
+    private final long minVisibleMs;
+    private final long maxLeadMs;
+    private long[] offsets = {0, MIN_DURATION_MS};
+    private long epoch;
+    private boolean clockAnchored;
+    private double leadMs;
+
+    public PlaybackScheduler(long minVisibleMs, long maxLeadMs) {
+        this.minVisibleMs = Math.max(0, minVisibleMs);
+        this.maxLeadMs = Math.max(0, maxLeadMs);
+    }
+
+    /** Sets the item durations; the epoch is kept, so call one of the anchoring methods next. */
+    public synchronized void setDurations(long[] durationsMs) {
+        if (durationsMs.length == 0) throw new IllegalArgumentException("Empty playlist");
+        long[] newOffsets = new long[durationsMs.length + 1];
+        for (int i = 0; i < durationsMs.length; i++) {
+            newOffsets[i + 1] = newOffsets[i] + Math.max(MIN_DURATION_MS, durationsMs[i]);
+        }
+        offsets = newOffsets;
+    }
+
+    public synchronized long getCycleLength() {
+        return offsets[offsets.length - 1];
+    }
+
+    /** Moves the timeline so that the item after {@code index} starts exactly at {@code boundary}. */
+    public synchronized void continueAfter(int index, long boundary) {
+        int count = offsets.length - 1;
+        int following = Math.floorMod(index + 1, count);
+        epoch = boundary - offsets[following];
+        clockAnchored = false;
+    }
+
+    /** Moves the timeline so that item {@code index} starts at {@code now}. */
+    public synchronized void startAt(int index, long now) {
+        continueAfter(index - 1, now);
+    }
+
+    /**
+     * Derives the epoch from a reference clock shared between screens, such as wall-clock
+     * or a synchronized master clock. {@code referenceNow} and {@code now} must be read
+     * together. After this call only the monotonic clock is used, so later jumps of the
+     * reference clock have no effect until the next anchoring.
+     */
+    public synchronized void anchorToClock(long referenceNow, long now) {
+        epoch = now - Math.floorMod(referenceNow, getCycleLength());
+        clockAnchored = true;
+    }
+
+    /** Start of cycle 0, item 0 on the monotonic clock; what a sync master shares. */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized boolean isClockAnchored() {
+        return clockAnchored;
+    }
+
+    /** The item the timeline places on screen at {@code time}. */
+    public synchronized Slot slotAt(long time) {
+        long cycleLength = getCycleLength();
+        long cycle = Math.floorDiv(time - epoch, cycleLength);
+        long position = Math.floorMod(time - epoch, cycleLength);
+
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long cycleStart = epoch + cycle * cycleLength;
+        return new Slot(low, cycleStart + offsets[low], cycleStart + offsets[low + 1]);
+    }
+
+    /**
+     * The item to load for an advance happening at {@code now}. Normally this is the item
+     * that starts one lead time from now. When playback has fallen behind, it is the item
+     * the timeline says is on screen, unless less than the minimum visible time is left
+     * of it; in that case the item after it is returned.
+     */
+    public synchronized Slot next(long now) {
+        long target = now + getLeadMs();
+        Slot slot = slotAt(target);
+        if (slot.end - target < minVisibleMs) slot = slotAt(slot.end);
+        return slot;
+    }
+
+    /**
+     * Where playback continues after a pause. With a shared clock this is where the
+     * timeline is now. Otherwise the timeline is moved so that {@code index} starts again.
+     */
+    public synchronized Slot resume(int index, long now) {
+        if (clockAnchored) return next(now);
+        startAt(index, now);
+        return slotAt(now);
+    }
+
+    /**
+     * Records when {@code slot} actually appeared on screen. Handoffs later than the
+     * maximum lead come from downloads or stalls rather than decoding, so they are not
+     * used to adjust the lead.
+     */
+    public synchronized void onShown(Slot slot, long shownAt) {
+        long late = shownAt - slot.start;
+        if (Math.abs(late) > maxLeadMs) return;
+        leadMs = Math.max(0, Math.min(maxLeadMs, leadMs + LEAD_SMOOTHING * late));
+    }
+
+    /**
+     * How long after {@code shownAt} the advance away from {@code slot} should start. An
+     * item that appeared late still stays up for the minimum visible time; the next item
+     * is shortened to make up for it.
+     */
+    public synchronized long advanceDelay(Slot slot, long shownAt) {
+        return Math.max(minVisibleMs, slot.end - getLeadMs() - shownAt);
+    }
+
+    public synchronized long getLeadMs() {
+        return Math.round(leadMs);
+    }
+}
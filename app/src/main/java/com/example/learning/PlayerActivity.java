@@ -2,11 +2,17 @@ package com.example.learning;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -16,74 +22,146 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.zxing.integration.android.IntentIntegrator;
-import com.google.zxing.integration.android.IntentResult;
-
+import com.google.gson.JsonParseException;
+import com.google.zxing.ResultPoint;
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.BarcodeResult;
+import com.journeyapps.barcodescanner.BarcodeView;
+import com.journeyapps.barcodescanner.BeepManager;
+import com.journeyapps.barcodescanner.DecoratedBarcodeView;
+import com.journeyapps.barcodescanner.Decoder;
+import com.journeyapps.barcodescanner.Size;
+import com.journeyapps.barcodescanner.camera.CameraSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class PlayerActivity extends AppCompatActivity {
 
     private Button backButton;
     private Button scanButton;
     private Button addProductButton;
+    private Button importCatalogButton;
     private TextView resultText;
     private TextView priceText;
+    private EditText searchEditText;
+    private ListView searchResultsList;
+    private ArrayAdapter<String> searchResultsAdapter;
+    private final List<String> searchResultBarcodes = new ArrayList<>();
+    private volatile ProductSearch productSearch;
+    private DecoratedBarcodeView barcodeView;
+    private BeepManager beepManager;
+    private boolean scanning;
 
     private static final int CAMERA_PERMISSION_REQUEST = 100;
-    private Map<String, Product> productDatabase;
-    private List<Product> productList;
+    private static final int IMPORT_CATALOG_REQUEST = 101;
+    // A code held in front of the camera is decoded on every frame; report it once.
+    private static final long DUPLICATE_WINDOW_MS = 1500;
+    private final ScanDeduplicator scanDeduplicator = new ScanDeduplicator(DUPLICATE_WINDOW_MS);
+    private ProductCatalog catalog;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_player);
 
-        initializeProductDatabase();
         initializeViews();
         setupClickListeners();
+        initializeProductDatabase();
     }
 
+    /**
+     * Opens the catalog and builds the search index off the UI thread; opening may replay
+     * part of the log. Scans and the search box answer once it is open.
+     */
     private void initializeProductDatabase() {
-        productDatabase = new HashMap<>();
-        productList = new ArrayList<>();
-
-        addInitialProducts();
+        new Thread(() -> {
+            ProductCatalog opened;
+            try {
+                opened = ProductCatalog.getInstance(this);
+                if (opened.size() == 0) addInitialProducts(opened);
+                Log.d("Product", "Katalog otvoren: " + opened.size() + " artikala");
+            } catch (IOException e) {
+                Log.e("Product", "Cannot open product catalog", e);
+                runOnUiThread(() -> Toast.makeText(this, "Katalog artikala nije dostupan", Toast.LENGTH_LONG).show());
+                return;
+            }
+            runOnUiThread(() -> catalog = opened);
+
+            try {
+                long start = SystemClock.elapsedRealtime();
+                productSearch = ProductSearch.getInstance(opened);
+                Log.d("Product", "Search index: " + productSearch.size() + " artikala u "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+                runOnUiThread(() -> {
+                    if (!isDestroyed()) showSearchResults(searchEditText.getText().toString());
+                });
+            } catch (IOException e) {
+                Log.e("Product", "Cannot build product search index", e);
+            }
+        }, "catalog-open").start();
     }
 
-    private void addInitialProducts() {
-        Product[] initialProducts = {
-                new Product("Milka Čokolada 100g", 2.50, "123456789012"),
-                new Product("Coca-Cola 0.5L", 1.80, "978020137962"),
-                new Product("Argeta Pašteta", 3.20, "590123412345"),
-                new Product("Dukat Miljeko 1L", 1.50, "385123456789"),
-                new Product("Brasno Tipo 00 1kg", 1.20, "387123456789"),
-                new Product("Cedevita 250g", 4.50, "385987654321"),
-                new Product("Nutella 350g", 5.80, "401440033982"),
-                new Product("Nescafe Classic 100g", 6.20, "400590003078")
-        };
-
-        for (Product product : initialProducts) {
-            productDatabase.put(product.getBarcode(), product);
-            productList.add(product);
-        }
+    /** Seeds an empty catalog with the demo products. */
+    private static void addInitialProducts(ProductCatalog catalog) throws IOException {
+        catalog.put("123456789012", "Milka Čokolada 100g", 250, 0);
+        catalog.put("978020137962", "Coca-Cola 0.5L", 180, 0);
+        catalog.put("590123412345", "Argeta Pašteta", 320, 0);
+        catalog.put("385123456789", "Dukat Miljeko 1L", 150, 0);
+        catalog.put("387123456789", "Brasno Tipo 00 1kg", 120, 0);
+        catalog.put("385987654321", "Cedevita 250g", 450, 0);
+        catalog.put("401440033982", "Nutella 350g", 580, 0);
+        catalog.put("400590003078", "Nescafe Classic 100g", 620, 0);
+        catalog.flush();
     }
 
     private void initializeViews() {
         backButton = findViewById(R.id.backButton);
         scanButton = findViewById(R.id.scanButton);
         addProductButton = findViewById(R.id.addProductButton);
+        importCatalogButton = findViewById(R.id.importCatalogButton);
         resultText = findViewById(R.id.resultText);
         priceText = findViewById(R.id.priceText);
+        barcodeView = findViewById(R.id.barcodeView);
+        searchEditText = findViewById(R.id.searchEditText);
+        searchResultsList = findViewById(R.id.searchResultsList);
+        searchResultsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        searchResultsList.setAdapter(searchResultsAdapter);
+        beepManager = new BeepManager(this);
+
+        CameraSettings cameraSettings = barcodeView.getBarcodeView().getCameraSettings();
+        cameraSettings.setContinuousFocusEnabled(true);
+        barcodeView.getBarcodeView().setCameraSettings(cameraSettings);
+        barcodeView.setStatusText("Skeniraj barkod artikla");
+
+        ScannerProfile profile = loadScannerProfile();
+        BarcodeView preview = barcodeView.getBarcodeView();
+        preview.setDecoderFactory(baseHints -> new Decoder(new ProfileReader(profile, baseHints)));
+        // The preview only decodes inside its framing rectangle, so that is the region of interest.
+        preview.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) ->
+                preview.setFramingRectSize(new Size(Math.round((right - left) * profile.getRoiWidth()),
+                        Math.round((bottom - top) * profile.getRoiHeight()))));
+        Log.d("Product", "Scanner profile: " + profile);
+    }
+
+    private ScannerProfile loadScannerProfile() {
+        try {
+            return ScannerProfile.fromProperties(PropertiesLoader.loadProperties(this, R.raw.media));
+        } catch (IllegalArgumentException e) {
+            Log.e("Product", "Invalid scanner settings, using the retail profile", e);
+            return ScannerProfile.RETAIL;
+        }
     }
 
     private void setupClickListeners() {
         backButton.setOnClickListener(v -> finish());
 
         scanButton.setOnClickListener(v -> {
-            if (checkCameraPermission()) {
+            if (scanning) {
+                stopBarcodeScanner();
+            } else if (checkCameraPermission()) {
                 startBarcodeScanner();
             } else {
                 requestCameraPermission();
@@ -91,6 +169,84 @@ public class PlayerActivity extends AppCompatActivity {
         });
 
         addProductButton.setOnClickListener(v -> showAddProductDialog());
+        importCatalogButton.setOnClickListener(v -> pickCatalogFile());
+
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                showSearchResults(s.toString());
+            }
+        });
+        searchResultsList.setOnItemClickListener((parent, view, position, id) ->
+                processScannedBarcode(searchResultBarcodes.get(position)));
+    }
+
+    /**
+     * Runs on every keystroke; a search over the whole catalog takes a millisecond or two.
+     * Names come from the search and prices from the in-memory index, so nothing is read
+     * from disk here.
+     */
+    private void showSearchResults(String query) {
+        ProductSearch search = productSearch;
+        searchResultBarcodes.clear();
+        searchResultsAdapter.clear();
+        if (search != null && catalog != null && !query.trim().isEmpty()) {
+            for (String barcode : search.search(query, ProductSearch.DEFAULT_LIMIT)) {
+                String name = search.getName(barcode);
+                int priceCents = catalog.getPriceCents(barcode);
+                if (name == null || priceCents < 0) continue;
+                searchResultBarcodes.add(barcode);
+                searchResultsAdapter.add(name + " — " + barcode + " — "
+                        + ProductCatalog.formatCents(priceCents) + " KM");
+            }
+        }
+        searchResultsList.setVisibility(searchResultBarcodes.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    private void pickCatalogFile() {
+        if (catalog == null) {
+            Toast.makeText(this, "Katalog artikala nije dostupan", Toast.LENGTH_LONG).show();
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"text/csv", "text/comma-separated-values",
+                "text/plain", "application/json"});
+        startActivityForResult(intent, IMPORT_CATALOG_REQUEST);
+    }
+
+    /** Imports on a background thread; scanning keeps working against the catalog meanwhile. */
+    private void importCatalog(Uri uri) {
+        importCatalogButton.setEnabled(false);
+        Toast.makeText(this, "Uvoz cjenovnika je počeo", Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            String message;
+            try (InputStream input = getContentResolver().openInputStream(uri)) {
+                if (input == null) throw new IOException("Cannot open " + uri);
+                CatalogImporter.Result result = new CatalogImporter(catalog).importStream(input, null);
+                message = "Uvezeno " + result.getWritten() + " od " + result.getRows() + " artikala ("
+                        + result.getRowsPerSecond() + " redova/s)"
+                        + (result.getRejected() > 0 ? ", neispravnih: " + result.getRejected() : "");
+            } catch (IOException | JsonParseException e) {
+                Log.e("Product", "Catalog import failed", e);
+                message = "Uvoz cjenovnika nije uspio";
+            }
+            String shown = message;
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                importCatalogButton.setEnabled(true);
+                Toast.makeText(this, shown, Toast.LENGTH_LONG).show();
+            });
+        }, "catalog-import").start();
     }
 
     private void showAddProductDialog() {
@@ -110,8 +266,7 @@ public class PlayerActivity extends AppCompatActivity {
             String priceText = priceEditText.getText().toString().trim();
 
             if (validateProductInput(name, barcode, priceText)) {
-                double price = Double.parseDouble(priceText);
-                addNewProduct(name, price, barcode);
+                addNewProduct(name, ProductCatalog.parseCents(priceText), barcode);
             }
         });
 
@@ -139,18 +294,28 @@ public class PlayerActivity extends AppCompatActivity {
             return false;
         }
 
-        if (productDatabase.containsKey(barcode)) {
+        if (catalog == null) {
+            Toast.makeText(this, "Katalog artikala nije dostupan", Toast.LENGTH_LONG).show();
+            return false;
+        }
+
+        if (ProductCatalog.encodeBarcode(barcode) < 0) {
+            Toast.makeText(this, "Barkod smije sadržavati samo cifre (najviše 17)", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+
+        if (catalog.contains(barcode)) {
             Toast.makeText(this, "Artikal sa ovim barkodom već postoji!", Toast.LENGTH_LONG).show();
             return false;
         }
 
         try {
-            double priceValue = Double.parseDouble(price);
+            int priceValue = ProductCatalog.parseCents(price);
             if (priceValue <= 0) {
                 Toast.makeText(this, "Cijena mora biti veća od 0", Toast.LENGTH_SHORT).show();
                 return false;
             }
-        } catch (NumberFormatException e) {
+        } catch (NumberFormatException | ArithmeticException e) {
             Toast.makeText(this, "Nevalidan format cijene", Toast.LENGTH_SHORT).show();
             return false;
         }
@@ -158,17 +323,32 @@ public class PlayerActivity extends AppCompatActivity {
         return true;
     }
 
-    private void addNewProduct(String name, double price, String barcode) {
-        Product newProduct = new Product(name, price, barcode);
-        productDatabase.put(barcode, newProduct);
-        productList.add(newProduct);
-
-        Toast.makeText(this, "Artikal uspješno dodat!", Toast.LENGTH_LONG).show();
-        Log.d("Product", "Dodan novi artikal: " + name + " - " + barcode + " - " + price + " KM");
-
-        resultText.setText("Skeniraj barkod za informacije o artiklu");
-        priceText.setText("Cijena: --");
-        priceText.setTextColor(getResources().getColor(android.R.color.white));
+    /** Stores the product on a background thread, like an import; the sync waits for the disk. */
+    private void addNewProduct(String name, int priceCents, String barcode) {
+        ProductCatalog target = catalog;
+        new Thread(() -> {
+            try {
+                target.put(barcode, name, priceCents, System.currentTimeMillis());
+                // Only the log; the index file is rewritten after imports, and a reopen replays this record.
+                target.sync();
+            } catch (IOException e) {
+                Log.e("Product", "Failed to store product " + barcode, e);
+                runOnUiThread(() -> {
+                    if (!isDestroyed()) Toast.makeText(this, "Artikal nije sačuvan", Toast.LENGTH_LONG).show();
+                });
+                return;
+            }
+            Log.d("Product", "Dodan novi artikal: " + name + " - " + barcode + " - "
+                    + ProductCatalog.formatCents(priceCents) + " KM");
+
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                Toast.makeText(this, "Artikal uspješno dodat!", Toast.LENGTH_LONG).show();
+                resultText.setText("Skeniraj barkod za informacije o artiklu");
+                priceText.setText("Cijena: --");
+                priceText.setTextColor(getResources().getColor(android.R.color.white));
+            });
+        }, "catalog-add").start();
     }
 
     private boolean checkCameraPermission() {
@@ -182,13 +362,51 @@ public class PlayerActivity extends AppCompatActivity {
                 CAMERA_PERMISSION_REQUEST);
     }
 
+    /**
+     * Shows the embedded camera preview and decodes continuously until stopped. The camera
+     * stays open between products, so each scan costs one decode instead of an Activity
+     * round trip and a camera start.
+     */
     private void startBarcodeScanner() {
-        IntentIntegrator integrator = new IntentIntegrator(this);
-        integrator.setPrompt("Skeniraj barkod artikla");
-        integrator.setBeepEnabled(true);
-        integrator.setOrientationLocked(false);
-        integrator.setDesiredBarcodeFormats(IntentIntegrator.ALL_CODE_TYPES);
-        integrator.initiateScan();
+        scanning = true;
+        scanDeduplicator.reset();
+        barcodeView.setVisibility(View.VISIBLE);
+        barcodeView.decodeContinuous(scanCallback);
+        barcodeView.resume();
+        scanButton.setText("ZAUSTAVI SKENIRANJE");
+    }
+
+    private void stopBarcodeScanner() {
+        scanning = false;
+        barcodeView.pause();
+        barcodeView.setVisibility(View.GONE);
+        scanButton.setText("SKENIRAJ BARKOD");
+    }
+
+    private final BarcodeCallback scanCallback = new BarcodeCallback() {
+        @Override
+        public void barcodeResult(BarcodeResult result) {
+            String code = result.getText();
+            if (code == null || !scanDeduplicator.accept(code, SystemClock.elapsedRealtime())) return;
+            beepManager.playBeepSoundAndVibrate();
+            processScannedBarcode(code);
+        }
+
+        @Override
+        public void possibleResultPoints(List<ResultPoint> resultPoints) {
+        }
+    };
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (scanning) barcodeView.resume();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        barcodeView.pause();
     }
 
     @Override
@@ -205,41 +423,28 @@ public class PlayerActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        IntentResult result = IntentIntegrator.parseActivityResult(requestCode, resultCode, data);
-        if (result != null && result.getContents() != null) {
-            processScannedBarcode(result.getContents());
+        if (requestCode == IMPORT_CATALOG_REQUEST
+                && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            importCatalog(data.getData());
         }
     }
 
     private void processScannedBarcode(String barcode) {
-        Product product = productDatabase.get(barcode);
+        ProductCatalog.Product product = null;
+        try {
+            if (catalog != null) product = catalog.get(barcode);
+        } catch (IOException e) {
+            Log.e("Product", "Catalog lookup failed for " + barcode, e);
+        }
 
         if (product != null) {
             resultText.setText("Artikal: " + product.getName() + "\nBarkod: " + product.getBarcode());
-            priceText.setText(String.format("Cijena: %.2f KM", product.getPrice()));
+            priceText.setText("Cijena: " + ProductCatalog.formatCents(product.getPriceCents()) + " KM");
             priceText.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
-            Toast.makeText(this, "Artikal pronađen!", Toast.LENGTH_SHORT).show();
         } else {
             resultText.setText("Barkod: " + barcode + "\nArtikal nije pronađen");
             priceText.setText("Cijena: N/A");
             priceText.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
-            Toast.makeText(this, "Artikal nije u bazi", Toast.LENGTH_LONG).show();
         }
     }
-
-    private static class Product {
-        private String name;
-        private double price;
-        private String barcode;
-
-        public Product(String name, double price, String barcode) {
-            this.name = name;
-            this.price = price;
-            this.barcode = barcode;
-        }
-
-        public String getName() { return name; }
-        public double getPrice() { return price; }
-        public String getBarcode() { return barcode; }
-    }
 }
\ No newline at end of file
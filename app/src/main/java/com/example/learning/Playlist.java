@@ -0,0 +1,61 @@
+package com.example.learning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable playlist snapshot. Every item gets a stable id ({@code url#n} for the n-th
+ * occurrence of a URL) so two versions of the playlist can be compared item by item
+ * even when the same asset appears more than once.
+ */
+public class Playlist {
+
+    private final List<MediaItem> items;
+    private final List<String> ids;
+    private final Map<String, Integer> indexById;
+
+    public Playlist(List<MediaItem> items) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.ids = new ArrayList<>(items.size());
+        this.indexById = new HashMap<>();
+
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            String url = items.get(i).getUrl();
+            Integer seen = occurrences.get(url);
+            int occurrence = seen != null ? seen : 0;
+            occurrences.put(url, occurrence + 1);
+
+            String id = url + "#" + occurrence;
+            ids.add(id);
+            indexById.put(id, i);
+        }
+    }
+
+    public static Playlist empty() {
+        return new Playlist(Collections.<MediaItem>emptyList());
+    }
+
+    public List<MediaItem> getItems() { return items; }
+    public int size() { return items.size(); }
+    public boolean isEmpty() { return items.isEmpty(); }
+    public MediaItem get(int index) { return items.get(index); }
+    public String getId(int index) { return ids.get(index); }
+
+    /** Returns the index of the item with {@code id}, or -1. */
+    public int indexOf(String id) {
+        Integer index = indexById.get(id);
+        return index != null ? index : -1;
+    }
+
+    public List<String> getUrls() {
+        List<String> urls = new ArrayList<>(items.size());
+        for (MediaItem item : items) {
+            urls.add(item.getUrl());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.learning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Item level difference between two {@link Playlist} versions. Items that survive but
+ * changed relative order are reported as moved; only the minimum set is reported, i.e.
+ * everything outside the longest run of items that kept their relative order.
+ */
+public class PlaylistDiff {
+
+    private final List<MediaItem> added;
+    private final List<MediaItem> removed;
+    private final List<String> movedIds;
+    private final List<String> durationChangedIds;
+    private final Set<String> removedUrls;
+
+    private PlaylistDiff(List<MediaItem> added, List<MediaItem> removed, List<String> movedIds,
+                         List<String> durationChangedIds, Set<String> removedUrls) {
+        this.added = added;
+        this.removed = removed;
+        this.movedIds = movedIds;
+        this.durationChangedIds = durationChangedIds;
+        this.removedUrls = removedUrls;
+    }
+
+    public static PlaylistDiff compute(Playlist oldPlaylist, Playlist newPlaylist) {
+        List<MediaItem> added = new ArrayList<>();
+        List<MediaItem> removed = new ArrayList<>();
+        List<String> durationChanged = new ArrayList<>();
+
+        // New positions of the surviving items, in their old order.
+        List<Integer> survivorNewIndexes = new ArrayList<>();
+        List<String> survivorIds = new ArrayList<>();
+
+        for (int i = 0; i < oldPlaylist.size(); i++) {
+            String id = oldPlaylist.getId(i);
+            int newIndex = newPlaylist.indexOf(id);
+            if (newIndex < 0) {
+                removed.add(oldPlaylist.get(i));
+                continue;
+            }
+            survivorNewIndexes.add(newIndex);
+            survivorIds.add(id);
+            if (oldPlaylist.get(i).getDuration() != newPlaylist.get(newIndex).getDuration()) {
+                durationChanged.add(id);
+            }
+        }
+
+        for (int i = 0; i < newPlaylist.size(); i++) {
+            if (oldPlaylist.indexOf(newPlaylist.getId(i)) < 0) added.add(newPlaylist.get(i));
+        }
+
+        boolean[] stable = longestIncreasingRun(survivorNewIndexes);
+        List<String> moved = new ArrayList<>();
+        for (int i = 0; i < survivorIds.size(); i++) {
+            if (!stable[i]) moved.add(survivorIds.get(i));
+        }
+
+        Set<String> removedUrls = new HashSet<>(oldPlaylist.getUrls());
+        removedUrls.removeAll(newPlaylist.getUrls());
+
+        return new PlaylistDiff(Collections.unmodifiableList(added), Collections.unmodifiableList(removed),
+                Collections.unmodifiableList(moved), Collections.unmodifiableList(durationChanged),
+                Collections.unmodifiableSet(removedUrls));
+    }
+
+    public List<MediaItem> getAdded() { return added; }
+    public List<MediaItem> getRemoved() { return removed; }
+    public List<String> getMovedIds() { return movedIds; }
+    public List<String> getDurationChangedIds() { return durationChangedIds; }
+
+    /** URLs that no longer appear anywhere in the new playlist. */
+    public Set<String> getRemovedUrls() { return removedUrls; }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && movedIds.isEmpty() && durationChangedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " -" + removed.size() + " ~" + movedIds.size()
+                + " duration:" + durationChangedIds.size();
+    }
+
+    /** Marks the members of one longest strictly increasing subsequence (patience sorting). */
+    private static boolean[] longestIncreasingRun(List<Integer> values) {
+        int n = values.size();
+        int[] tailIndex = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            int value = values.get(i);
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values.get(tailIndex[mid]) < value) lo = mid + 1; else hi = mid;
+            }
+            previous[i] = lo > 0 ? tailIndex[lo - 1] : -1;
+            tailIndex[lo] = i;
+            if (lo == length) length++;
+        }
+
+        boolean[] member = new boolean[n];
+        for (int i = length > 0 ? tailIndex[length - 1] : -1; i >= 0; i = previous[i]) {
+            member[i] = true;
+        }
+        return member;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.learning;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the playlist JSON, an array of {@code {"type", "url", "durationInSeconds"}}
+ * objects, token by token and builds each {@link MediaItem} directly, without an
+ * intermediate response object or a fully materialized tree. Items are reported as soon
+ * as their closing brace has been read, so callers can act on the head of a long
+ * playlist while the rest is still arriving.
+ */
+public final class PlaylistParser {
+
+    static final int DEFAULT_IMAGE_DURATION_MS = 5000;
+    static final int DEFAULT_VIDEO_DURATION_MS = 15000;
+
+    public interface ItemListener {
+        void onItem(int index, MediaItem item);
+    }
+
+    private PlaylistParser() {
+    }
+
+    /** Parses the whole array. Entries without a URL are skipped. */
+    public static List<MediaItem> parse(Reader input, ItemListener listener) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        List<MediaItem> items = new ArrayList<>();
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return items;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                MediaItem item = readItem(reader);
+                if (item == null) continue;
+                items.add(item);
+                if (listener != null) listener.onItem(items.size() - 1, item);
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException("Malformed playlist at " + reader.getPath(), e);
+        }
+        return items;
+    }
+
+    private static MediaItem readItem(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        String type = null;
+        String url = null;
+        Integer durationInSeconds = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "url":
+                    url = reader.nextString();
+                    break;
+                case "durationInSeconds":
+                    durationInSeconds = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (url == null) return null;
+
+        MediaType mediaType = type != null ? MediaType.fromString(type) : MediaType.IMAGE;
+        int duration;
+        if (durationInSeconds != null) {
+            duration = durationInSeconds * 1000;
+        } else {
+            duration = mediaType == MediaType.VIDEO ? DEFAULT_VIDEO_DURATION_MS : DEFAULT_IMAGE_DURATION_MS;
+        }
+        return new MediaItem(url, mediaType, duration);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import retrofit2.Response;
+
+/**
+ * Keeps the last playlist the server returned on disk so startup never waits on the
+ * network, and revalidates it with {@code If-None-Match}/{@code If-Modified-Since}.
+ * <p>
+ * The response is parsed while it streams in (see {@link PlaylistParser}) and the raw
+ * bytes are copied to the snapshot on the way, so the body is never held in memory.
+ */
+public class PlaylistRepository {
+
+    private static final String SNAPSHOT_FILE = "playlist_snapshot.json";
+    private static final String VALIDATORS_FILE = "playlist_snapshot.properties";
+
+    private final Context context;
+    private final File snapshotFile;
+    private final File validatorsFile;
+
+    public PlaylistRepository(Context context) {
+        this.context = context.getApplicationContext();
+        snapshotFile = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        validatorsFile = new File(context.getFilesDir(), VALIDATORS_FILE);
+    }
+
+    /** Returns the last good playlist, or {@code null} if there is none. */
+    public List<MediaItem> loadSnapshot() {
+        if (!snapshotFile.exists()) return null;
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)) {
+            List<MediaItem> items = PlaylistParser.parse(reader, null);
+            return items.isEmpty() ? null : items;
+        } catch (IOException | JsonParseException e) {
+            Log.e("Playlist", "Discarding unreadable playlist snapshot", e);
+            snapshotFile.delete();
+            validatorsFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the playlist, revalidating the snapshot if there is one. Returns the new items,
+     * or {@code null} if the server reports that the snapshot is still current. Blocks, so
+     * it is meant for background work. {@code listener}, if given, sees each item as soon as
+     * it has been parsed, before the rest of the body has arrived.
+     */
+    public List<MediaItem> refreshBlocking(PlaylistParser.ItemListener listener) throws IOException {
+        Properties validators = loadValidators();
+        MediaApiService apiService = RetrofitClient.getClient(context).create(MediaApiService.class);
+
+        // Without a snapshot there is nothing to revalidate, so the request is unconditional.
+        boolean haveSnapshot = snapshotFile.exists();
+        Response<ResponseBody> response = apiService.streamMediaItems(
+                haveSnapshot ? validators.getProperty("etag") : null,
+                haveSnapshot ? validators.getProperty("lastModified") : null).execute();
+
+        if (response.code() == 304) {
+            if (response.errorBody() != null) response.errorBody().close();
+            Log.d("Playlist", "Playlist not modified");
+            return null;
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            if (response.errorBody() != null) response.errorBody().close();
+            throw new IOException("Server error: " + response.code());
+        }
+
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        List<MediaItem> items;
+        try (ResponseBody body = response.body();
+             BufferedSink snapshot = Okio.buffer(Okio.sink(tmp));
+             Reader reader = new InputStreamReader(
+                     Okio.buffer(tee(body.source(), snapshot)).inputStream(), StandardCharsets.UTF_8)) {
+            items = PlaylistParser.parse(reader, listener);
+        } catch (IOException | JsonParseException e) {
+            tmp.delete();
+            throw e instanceof IOException ? (IOException) e : new IOException("Malformed playlist", e);
+        }
+
+        if (tmp.renameTo(snapshotFile)) {
+            saveValidators(response.headers().get("ETag"), response.headers().get("Last-Modified"));
+        } else {
+            Log.e("Playlist", "Failed to store playlist snapshot");
+            tmp.delete();
+        }
+        return items;
+    }
+
+    /** Copies everything read from {@code source} into {@code copy}. */
+    private static Source tee(Source source, BufferedSink copy) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    sink.copyTo(copy.getBuffer(), sink.size() - read, read);
+                    copy.emitCompleteSegments();
+                }
+                return read;
+            }
+        };
+    }
+
+    private void saveValidators(String etag, String lastModified) {
+        Properties validators = new Properties();
+        if (etag != null) validators.setProperty("etag", etag);
+        if (lastModified != null) validators.setProperty("lastModified", lastModified);
+        try (FileOutputStream output = new FileOutputStream(validatorsFile)) {
+            validators.store(output, null);
+        } catch (IOException e) {
+            Log.e("Playlist", "Failed to write playlist validators", e);
+            validatorsFile.delete();
+        }
+    }
+
+    private Properties loadValidators() {
+        Properties validators = new Properties();
+        if (!validatorsFile.exists()) return validators;
+        try (InputStream input = new FileInputStream(validatorsFile)) {
+            validators.load(input);
+        } catch (IOException e) {
+            validators.clear();
+        }
+        return validators;
+    }
+}
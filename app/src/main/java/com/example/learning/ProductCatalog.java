@@ -0,0 +1,818 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent product catalog for the price checker, sized for a few hundred thousand SKUs.
+ * <p>
+ * {@code catalog.dat} is an append-only log of records
+ * {@code [crc][barcode key][price cents][version][name length][name UTF-8]}. The newest
+ * record for a barcode wins. Only keys, record offsets and prices are kept on the heap
+ * ({@link BarcodeIndex}); names are read from the log when a product is looked up.
+ * <p>
+ * {@code catalog.idx} is a dump of the index entries plus the log length they cover.
+ * Opening maps that file, rebuilds the table from it and replays only the log records
+ * written after it, so the catalog opens without scanning the log. A torn record at the end
+ * of the log, from a crash during a write, is cut off on open.
+ * <p>
+ * Records replaced by a newer one stay in the log until {@link #flush()} finds that they
+ * take up more than half of it; the live records are then copied to a new log, which
+ * replaces the old one.
+ * <p>
+ * Lookups share a read lock, so scanning continues while {@link CatalogImporter} writes;
+ * a writer holds the lock only for one batch append and the index updates. Syncs, the
+ * index file and compaction are written outside the write lock.
+ */
+public class ProductCatalog implements Closeable {
+
+    static final String DATA_FILE = "catalog.dat";
+    static final String INDEX_FILE = "catalog.idx";
+
+    private static final int DATA_MAGIC = 0x50434154;
+    private static final int INDEX_MAGIC = 0x50434958;
+    private static final int FORMAT_VERSION = 1;
+    // Version 2 added the replaced byte count to the header.
+    private static final int INDEX_FORMAT_VERSION = 2;
+    private static final int DATA_HEADER_SIZE = 8;
+    private static final int INDEX_HEADER_SIZE = 28;
+    // crc, key, cents, version, name length
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4 + 8 + 2;
+    private static final int MAX_NAME_BYTES = Short.MAX_VALUE;
+    static final int MAX_BARCODE_DIGITS = 17;
+    // 10^17 < 2^57, so the digit count fits above the value.
+    static final int KEY_LENGTH_SHIFT = 57;
+
+    public static final class Product {
+        private final String name;
+        private final int priceCents;
+        private final String barcode;
+
+        Product(String name, int priceCents, String barcode) {
+            this.name = name;
+            this.priceCents = priceCents;
+            this.barcode = barcode;
+        }
+
+        public String getName() { return name; }
+        public int getPriceCents() { return priceCents; }
+        public String getBarcode() { return barcode; }
+    }
+
+    /**
+     * Rows that {@link #apply(Batch)} writes with a single append. Rows are validated and
+     * encoded as they are added, without holding the catalog lock.
+     */
+    public static final class Batch {
+        private ByteBuffer records = ByteBuffer.allocate(16 * 1024);
+        private long[] keys = new long[64];
+        private int[] prices = new int[64];
+        private long[] versions = new long[64];
+        private int[] starts = new int[65];
+        private int size;
+
+        /** Same checks as {@link ProductCatalog#put}; throws {@link IllegalArgumentException}. */
+        public void add(String barcode, String name, int priceCents, long version) {
+            long key = checkedKey(barcode, priceCents);
+            byte[] nameBytes = checkedName(barcode, name);
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+                starts = Arrays.copyOf(starts, capacity + 1);
+            }
+            int length = RECORD_HEADER_SIZE + nameBytes.length;
+            if (records.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(records.capacity() * 2, records.position() + length));
+                records.flip();
+                records = larger.put(records);
+            }
+            writeRecord(records, key, priceCents, version, nameBytes);
+            keys[size] = key;
+            prices[size] = priceCents;
+            versions[size] = version;
+            starts[++size] = records.position();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            records.clear();
+            size = 0;
+        }
+    }
+
+    public interface Listener {
+        /** Called on the writing thread after a product was stored, outside the catalog lock. */
+        void onProductStored(String barcode, String name);
+    }
+
+    public interface Visitor {
+        void visit(String barcode, String name, int priceCents);
+    }
+
+    private static ProductCatalog instance;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes flush and compaction, which write the index file and the log copy.
+    private final Object flushLock = new Object();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Replaced by compaction under the write lock; volatile for the syncs made outside it.
+    private RandomAccessFile data;
+    private volatile FileChannel channel;
+    private BarcodeIndex index;
+    private long dataLength;
+    // Log length the index file covers; guarded by flushLock once open.
+    private long indexedLength;
+    // Bytes of log records that a newer record for the same barcode replaced.
+    private long replacedBytes;
+
+    public static synchronized ProductCatalog getInstance(Context context) throws IOException {
+        if (instance == null) {
+            instance = new ProductCatalog(new File(context.getFilesDir(), "catalog"));
+        }
+        return instance;
+    }
+
+    public ProductCatalog(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        dataFile = new File(dir, DATA_FILE);
+        indexFile = new File(dir, INDEX_FILE);
+        data = new RandomAccessFile(dataFile, "rw");
+        channel = data.getChannel();
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String barcode) {
+        long key = encodeBarcode(barcode);
+        if (key < 0) return false;
+        lock.readLock().lock();
+        try {
+            return index.find(key) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Price without touching the log; -1 if the barcode is unknown. */
+    public int getPriceCents(String barcode) {
+        long key = encodeBarcode(barcode);
+        if (key < 0) return -1;
+        lock.readLock().lock();
+        try {
+            int slot = index.find(key);
+            return slot >= 0 ? index.priceAt(slot) : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The product for {@code barcode}, or {@code null}. Reads the name from the log. */
+    public Product get(String barcode) throws IOException {
+        long key = encodeBarcode(barcode);
+        if (key < 0) return null;
+        lock.readLock().lock();
+        try {
+            int slot = index.find(key);
+            if (slot < 0) return null;
+            return new Product(readName(index.offsetAt(slot)), index.priceAt(slot), decodeBarcode(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts or replaces a product. The record is appended to the log right away; it is
+     * durable after {@link #sync()}, and the index file is only rewritten by {@link #flush()}.
+     */
+    public void put(String barcode, String name, int priceCents, long version) throws IOException {
+        long key = checkedKey(barcode, priceCents);
+        byte[] nameBytes = checkedName(barcode, name);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + nameBytes.length);
+        writeRecord(record, key, priceCents, version, nameBytes);
+        record.flip();
+
+        lock.writeLock().lock();
+        try {
+            int slot = index.find(key);
+            if (slot >= 0) replacedBytes += recordLength(index.offsetAt(slot));
+            long offset = append(record);
+            index.put(key, offset, priceCents);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Listener listener : listeners) listener.onProductStored(barcode, name);
+    }
+
+    /**
+     * Writes the rows of {@code batch} that are newer than what the catalog holds: a row is
+     * skipped if the stored record for its barcode, or an earlier row of the batch, has the
+     * same or a higher version, and also if the stored record already has its price and
+     * name, whatever the versions. The kept rows go to the log in one append and are synced
+     * before this returns. Returns how many rows were written.
+     * <p>
+     * Stored versions are read from the log under the read lock, so lookups go on meanwhile.
+     * The write lock is held for the append and the index updates, plus a second selection
+     * in the rare case that another write landed in between.
+     */
+    public int apply(Batch batch) throws IOException {
+        if (batch.size == 0) return 0;
+        byte[] records = batch.records.array();
+        int[] kept = new int[batch.size];
+        int[] replaced = new int[batch.size];
+        int keptCount;
+        long selectedAt;
+        FileChannel written;
+
+        lock.readLock().lock();
+        try {
+            selectedAt = dataLength;
+            keptCount = selectNewer(batch, kept, replaced);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (keptCount == 0) return 0;
+
+        lock.writeLock().lock();
+        try {
+            // Every write appends, so an unchanged length means the selection still holds.
+            if (dataLength != selectedAt) keptCount = selectNewer(batch, kept, replaced);
+            if (keptCount == 0) return 0;
+
+            // Compact the kept records to the front of the batch buffer.
+            int length = 0;
+            for (int i = 0; i < keptCount; i++) {
+                int row = kept[i];
+                int start = batch.starts[row];
+                int recordLength = batch.starts[row + 1] - start;
+                System.arraycopy(records, start, records, length, recordLength);
+                batch.starts[row] = length;
+                length += recordLength;
+            }
+
+            long offset = append(ByteBuffer.wrap(records, 0, length));
+            for (int i = 0; i < keptCount; i++) {
+                int row = kept[i];
+                index.put(batch.keys[row], offset + batch.starts[row], batch.prices[row]);
+                replacedBytes += replaced[i];
+            }
+            written = channel;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // The rows are already visible; syncing outside the lock keeps lookups from waiting on the disk.
+        force(written);
+        if (!listeners.isEmpty()) {
+            for (int i = 0; i < keptCount; i++) {
+                int start = batch.starts[kept[i]];
+                int nameLength = batch.records.getShort(start + 24) & 0xffff;
+                String name = new String(records, start + RECORD_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+                String barcode = decodeBarcode(batch.keys[kept[i]]);
+                for (Listener listener : listeners) listener.onProductStored(barcode, name);
+            }
+        }
+        return keptCount;
+    }
+
+    /**
+     * Fills {@code kept} with the rows of {@code batch} that are newer than the catalog and
+     * than earlier rows of the batch, and that change the stored price or name, in order;
+     * returns how many. {@code replaced} gets the length of the record each kept row
+     * replaces, 0 for a new barcode. Needs either lock.
+     */
+    private int selectNewer(Batch batch, int[] kept, int[] replaced) throws IOException {
+        // Row number of the newest row kept so far per barcode, in the offset column.
+        BarcodeIndex pending = new BarcodeIndex(batch.size);
+        byte[] records = batch.records.array();
+        ByteBuffer stored = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        ByteBuffer storedName = ByteBuffer.allocate(256);
+        int keptCount = 0;
+        for (int row = 0; row < batch.size; row++) {
+            long key = batch.keys[row];
+            long version = batch.versions[row];
+            int earlier = pending.find(key);
+            int replacedLength = 0;
+            if (earlier >= 0) {
+                int earlierRow = (int) pending.offsetAt(earlier);
+                if (batch.versions[earlierRow] >= version) continue;
+                replacedLength = batch.starts[earlierRow + 1] - batch.starts[earlierRow];
+            } else {
+                int slot = index.find(key);
+                if (slot >= 0) {
+                    long offset = index.offsetAt(slot);
+                    stored.clear();
+                    readFully(stored, offset);
+                    if (stored.getLong(16) >= version) continue;
+                    replacedLength = RECORD_HEADER_SIZE + (stored.getShort(24) & 0xffff);
+
+                    // A feed without versions stamps every row with the import time, so
+                    // an unchanged row is only recognised by its content.
+                    int nameStart = batch.starts[row] + RECORD_HEADER_SIZE;
+                    int nameLength = batch.starts[row + 1] - nameStart;
+                    if (index.priceAt(slot) == batch.prices[row] && (stored.getShort(24) & 0xffff) == nameLength) {
+                        if (storedName.capacity() < nameLength) storedName = ByteBuffer.allocate(nameLength);
+                        storedName.clear().limit(nameLength);
+                        readFully(storedName, offset + RECORD_HEADER_SIZE);
+                        storedName.flip();
+                        if (storedName.equals(ByteBuffer.wrap(records, nameStart, nameLength))) continue;
+                    }
+                }
+            }
+            pending.put(key, row, 0);
+            replaced[keptCount] = replacedLength;
+            kept[keptCount++] = row;
+        }
+        return keptCount;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Calls {@code visitor} for every product, reading each name from the log. Writers wait
+     * until it returns.
+     */
+    public void forEach(Visitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                long key = index.keyAt(slot);
+                if (key == 0) continue;
+                visitor.visit(decodeBarcode(key), readName(index.offsetAt(slot)), index.priceAt(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes everything written so far durable without rewriting the index file; the next
+     * open replays the records written after the last {@link #flush()}.
+     */
+    public void sync() throws IOException {
+        force(channel);
+    }
+
+    /**
+     * Makes everything written so far durable and saves the index for a fast next open.
+     * Compacts the log first if replaced records take up more than half of it.
+     * <p>
+     * The index entries are copied under the read lock and the file is written from the
+     * copy, so neither lookups nor writers wait for the dump and its sync. Records appended
+     * meanwhile are not covered and are replayed on the next open.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            compactIfNeeded();
+            FileChannel written;
+            long coveredLength;
+            long coveredReplacedBytes;
+            long[] keys = null;
+            long[] offsets = null;
+            int[] prices = null;
+            lock.readLock().lock();
+            try {
+                written = channel;
+                coveredLength = dataLength;
+                coveredReplacedBytes = replacedBytes;
+                if (coveredLength != indexedLength) {
+                    int count = index.size();
+                    keys = new long[count];
+                    offsets = new long[count];
+                    prices = new int[count];
+                    for (int slot = 0, i = 0; slot < index.capacity(); slot++) {
+                        if (index.keyAt(slot) == 0) continue;
+                        keys[i] = index.keyAt(slot);
+                        offsets[i] = index.offsetAt(slot);
+                        prices[i++] = index.priceAt(slot);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            force(written);
+            if (keys == null) return;
+            // Only compaction switches the log, and it runs under flushLock too.
+            writeIndex(keys, offsets, prices, coveredLength, coveredReplacedBytes);
+            indexedLength = coveredLength;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // Covers anything appended after the flush; the next open replays it.
+                channel.force(false);
+            } finally {
+                data.close();
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live records if replaced ones take up more than half
+     * of it; returns whether it did. The copy is made under the read lock, so lookups go
+     * on, and only the switch to the new log takes the write lock. If another write lands
+     * during the copy, the copy is dropped and the next flush tries again.
+     */
+    boolean compactIfNeeded() throws IOException {
+        synchronized (flushLock) {
+            return compact();
+        }
+    }
+
+    private boolean compact() throws IOException {
+        File tmp = new File(dataFile.getPath() + ".tmp");
+        RandomAccessFile compacted = null;
+        boolean switched = false;
+        try {
+            BarcodeIndex compactedIndex;
+            long copiedLength;
+            long compactedLength;
+            lock.readLock().lock();
+            try {
+                if (replacedBytes * 2 <= dataLength - DATA_HEADER_SIZE) return false;
+                compacted = new RandomAccessFile(tmp, "rw");
+                compacted.setLength(0);
+                copiedLength = dataLength;
+                compactedIndex = new BarcodeIndex(index.size());
+                compactedLength = copyLive(compacted.getChannel(), compactedIndex);
+            } finally {
+                lock.readLock().unlock();
+            }
+            compacted.getChannel().force(false);
+
+            lock.writeLock().lock();
+            try {
+                if (dataLength != copiedLength) return false;
+                // The old index points into the old log; without it a crash just means a full replay.
+                if (indexFile.exists() && !indexFile.delete()) throw new IOException("Could not delete " + indexFile);
+                if (!tmp.renameTo(dataFile)) throw new IOException("Could not replace " + dataFile);
+                data.close();
+                data = compacted;
+                channel = compacted.getChannel();
+                index = compactedIndex;
+                Log.d("Product", "Catalog compacted from " + dataLength / 1024 + " KB to "
+                        + compactedLength / 1024 + " KB");
+                dataLength = compactedLength;
+                indexedLength = DATA_HEADER_SIZE;
+                replacedBytes = 0;
+                switched = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        } finally {
+            if (!switched) {
+                if (compacted != null) compacted.close();
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies the records the index points at to {@code target} in log order and indexes
+     * them in {@code targetIndex}; returns the length of the new log. Needs either lock.
+     */
+    private long copyLive(FileChannel target, BarcodeIndex targetIndex) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        in.limit(0);
+        long inStart = DATA_HEADER_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        out.putInt(DATA_MAGIC).putInt(FORMAT_VERSION);
+        long outStart = 0;
+
+        long position = DATA_HEADER_SIZE;
+        while (position < dataLength) {
+            inStart = buffer(in, inStart, position, RECORD_HEADER_SIZE);
+            int at = (int) (position - inStart);
+            long key = in.getLong(at + 4);
+            int length = RECORD_HEADER_SIZE + (in.getShort(at + 24) & 0xffff);
+            int slot = index.find(key);
+            if (slot >= 0 && index.offsetAt(slot) == position) {
+                inStart = buffer(in, inStart, position, length);
+                at = (int) (position - inStart);
+                if (out.remaining() < length) {
+                    outStart += out.position();
+                    drain(out, target);
+                }
+                targetIndex.put(key, outStart + out.position(), index.priceAt(slot));
+                out.put(in.array(), at, length);
+            }
+            position += length;
+        }
+        long length = outStart + out.position();
+        drain(out, target);
+        return length;
+    }
+
+    /**
+     * Makes {@code in}, which holds the log from {@code inStart}, hold at least
+     * {@code length} bytes from {@code position}; returns where it starts now.
+     */
+    private long buffer(ByteBuffer in, long inStart, long position, int length) throws IOException {
+        long end = inStart + in.limit();
+        if (position + length <= end) return inStart;
+        int kept = (int) Math.max(0, end - position);
+        if (kept > 0) System.arraycopy(in.array(), (int) (position - inStart), in.array(), 0, kept);
+        in.limit((int) Math.min(in.capacity(), dataLength - position)).position(kept);
+        readFully(in, position);
+        in.position(0);
+        return position;
+    }
+
+    /** Heap used by the index arrays. */
+    public long getIndexMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return index.memoryBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Packs a numeric barcode of up to 17 digits (GTIN-14 and shorter) into a non-negative
+     * long; the digit count sits in the top bits so leading zeros survive ({@code "0123"}
+     * and {@code "123"} are different keys). Returns -1 for anything else.
+     */
+    public static long encodeBarcode(String barcode) {
+        if (barcode == null) return -1;
+        int length = barcode.length();
+        if (length == 0 || length > MAX_BARCODE_DIGITS) return -1;
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = barcode.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return ((long) length << KEY_LENGTH_SHIFT) | value;
+    }
+
+    public static String decodeBarcode(long key) {
+        int length = (int) (key >>> KEY_LENGTH_SHIFT);
+        String digits = Long.toString(key & ((1L << KEY_LENGTH_SHIFT) - 1));
+        StringBuilder barcode = new StringBuilder(length);
+        for (int i = digits.length(); i < length; i++) barcode.append('0');
+        return barcode.append(digits).toString();
+    }
+
+    /** "2.5", "2,50" or "3" to cents; throws {@link NumberFormatException} for anything else. */
+    public static int parseCents(String price) {
+        return new BigDecimal(price.trim().replace(',', '.')).movePointRight(2).intValueExact();
+    }
+
+    public static String formatCents(int cents) {
+        return (cents / 100) + "." + (cents % 100 < 10 ? "0" : "") + (cents % 100);
+    }
+
+    private static long checkedKey(String barcode, int priceCents) {
+        long key = encodeBarcode(barcode);
+        if (key < 0) throw new IllegalArgumentException("Not a numeric barcode: " + barcode);
+        if (priceCents < 0) throw new IllegalArgumentException("Negative price for " + barcode);
+        return key;
+    }
+
+    private static byte[] checkedName(String barcode, String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES) throw new IllegalArgumentException("Name too long for " + barcode);
+        return nameBytes;
+    }
+
+    /** Puts one record at the position of {@code target}, which must have room for it. */
+    private static void writeRecord(ByteBuffer target, long key, int priceCents, long version, byte[] name) {
+        int start = target.position();
+        target.position(start + 4);
+        target.putLong(key).putInt(priceCents).putLong(version).putShort((short) name.length).put(name);
+        target.putInt(start, crc(target.array(), target.arrayOffset() + start + 4, RECORD_HEADER_SIZE + name.length - 4));
+    }
+
+    /** Appends {@code records} to the log; returns the offset they start at. Needs the write lock. */
+    private long append(ByteBuffer records) throws IOException {
+        long offset = dataLength;
+        int start = records.position();
+        while (records.hasRemaining()) {
+            channel.write(records, offset + records.position() - start);
+        }
+        dataLength += records.position() - start;
+        return offset;
+    }
+
+    /** Syncs {@code written}; a log that compaction has replaced was copied and synced already. */
+    private static void force(FileChannel written) throws IOException {
+        try {
+            written.force(false);
+        } catch (ClosedChannelException e) {
+            // Compaction closes the old log only after the copy of everything in it was synced.
+        }
+    }
+
+    /** Length of the record at {@code offset}. */
+    private int recordLength(long offset) throws IOException {
+        ByteBuffer nameLength = ByteBuffer.allocate(2);
+        readFully(nameLength, offset + 24);
+        return RECORD_HEADER_SIZE + (nameLength.getShort(0) & 0xffff);
+    }
+
+    /** Fills {@code buffer}, which starts at position 0, from {@code offset} of the log. */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Catalog record cut short at " + offset);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        if (channel.size() < DATA_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE).putInt(DATA_MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            indexFile.delete();
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != DATA_MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unknown catalog format in " + dataFile);
+            }
+        }
+        dataLength = channel.size();
+
+        indexedLength = readIndex();
+        if (indexedLength < 0) {
+            index = new BarcodeIndex(0);
+            indexedLength = DATA_HEADER_SIZE;
+            replacedBytes = 0;
+        }
+        long end = replay(indexedLength);
+        if (end < dataLength) {
+            channel.truncate(end);
+            dataLength = end;
+        }
+    }
+
+    /** Loads the index file; returns the log length it covers, or -1 if it is unusable. */
+    private long readIndex() throws IOException {
+        if (!indexFile.exists()) return -1;
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+             FileChannel indexChannel = file.getChannel()) {
+            long fileSize = indexChannel.size();
+            if (fileSize < INDEX_HEADER_SIZE) return -1;
+            MappedByteBuffer map = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (map.getInt() != INDEX_MAGIC || map.getInt() != INDEX_FORMAT_VERSION) return -1;
+            int count = map.getInt();
+            long coveredLength = map.getLong();
+            long coveredReplacedBytes = map.getLong();
+            if (count < 0 || coveredLength > dataLength
+                    || fileSize != INDEX_HEADER_SIZE + (long) count * (8 + 8 + 4)) {
+                return -1;
+            }
+
+            LongBuffer keys = map.asLongBuffer();
+            map.position(map.position() + count * 8);
+            LongBuffer offsets = map.asLongBuffer();
+            map.position(map.position() + count * 8);
+            IntBuffer prices = map.asIntBuffer();
+            index = new BarcodeIndex(count);
+            for (int i = 0; i < count; i++) {
+                index.put(keys.get(i), offsets.get(i), prices.get(i));
+            }
+            replacedBytes = coveredReplacedBytes;
+            return coveredLength;
+        }
+    }
+
+    /** Writes the entries in three sections, keys then offsets then prices. Needs flushLock. */
+    private void writeIndex(long[] keys, long[] offsets, int[] prices, long coveredLength,
+                            long coveredReplacedBytes) throws IOException {
+        int count = keys.length;
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+             FileChannel indexChannel = file.getChannel()) {
+            file.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE)
+                    .putInt(INDEX_MAGIC).putInt(INDEX_FORMAT_VERSION).putInt(count).putLong(coveredLength)
+                    .putLong(coveredReplacedBytes);
+            header.flip();
+            indexChannel.write(header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            for (int section = 0; section < 3; section++) {
+                for (int i = 0; i < count; i++) {
+                    if (chunk.remaining() < 8) drain(chunk, indexChannel);
+                    if (section == 0) {
+                        chunk.putLong(keys[i]);
+                    } else if (section == 1) {
+                        chunk.putLong(offsets[i]);
+                    } else {
+                        chunk.putInt(prices[i]);
+                    }
+                }
+            }
+            drain(chunk, indexChannel);
+            indexChannel.force(false);
+        }
+        if (!tmp.renameTo(indexFile)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + indexFile);
+        }
+    }
+
+    private static void drain(ByteBuffer chunk, FileChannel target) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) target.write(chunk);
+        chunk.clear();
+    }
+
+    /** Indexes the records from {@code position} on; returns where the last valid one ends. */
+    private long replay(long position) throws IOException {
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        ByteBuffer record = ByteBuffer.allocate(256);
+        while (position + RECORD_HEADER_SIZE <= dataLength) {
+            recordHeader.clear();
+            channel.read(recordHeader, position);
+            int crc = recordHeader.getInt(0);
+            long key = recordHeader.getLong(4);
+            int cents = recordHeader.getInt(12);
+            int nameLength = recordHeader.getShort(24) & 0xffff;
+            long end = position + RECORD_HEADER_SIZE + nameLength;
+            if (end > dataLength) break;
+
+            if (record.capacity() < RECORD_HEADER_SIZE + nameLength) {
+                record = ByteBuffer.allocate(RECORD_HEADER_SIZE + nameLength);
+            }
+            record.clear().limit(RECORD_HEADER_SIZE + nameLength);
+            channel.read(record, position);
+            if (crc(record.array(), 4, RECORD_HEADER_SIZE + nameLength - 4) != crc) break;
+
+            int slot = index.find(key);
+            if (slot >= 0) replacedBytes += recordLength(index.offsetAt(slot));
+            index.put(key, position, cents);
+            position = end;
+        }
+        return position;
+    }
+
+    private String readName(long offset) throws IOException {
+        ByteBuffer nameLengthBuffer = ByteBuffer.allocate(2);
+        channel.read(nameLengthBuffer, offset + 24);
+        int nameLength = nameLengthBuffer.getShort(0) & 0xffff;
+        ByteBuffer name = ByteBuffer.allocate(nameLength);
+        readFully(name, offset + RECORD_HEADER_SIZE);
+        return new String(name.array(), StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.learning;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds products by partial barcode or by name, fast enough to run on every keystroke.
+ * <p>
+ * Barcodes: {@link ProductCatalog#encodeBarcode} keys sort by length and then by value,
+ * so every barcode that starts with a given prefix lies in one contiguous range per
+ * barcode length. A sorted key array therefore answers prefix queries like a digit trie,
+ * with 12 bytes per product instead of a node per digit. New products go to a small
+ * unsorted tail that is merged in once it grows.
+ * <p>
+ * Names: each name is normalized (lower case, diacritics removed, so "Čokolada" and
+ * "cokolada" are the same word) and split into trigrams of its words, each word padded so
+ * that word starts have trigrams of their own. A query is scored by how many of its
+ * trigrams a name shares, which tolerates typos; the last query word is treated as a
+ * prefix because it is still being typed. Names that start with the query, or contain it,
+ * rank first.
+ * <p>
+ * The names are also kept as given, so a result list can be shown with
+ * {@link #getName} and {@link ProductCatalog#getPriceCents} without reading the catalog
+ * log on the main thread.
+ * <p>
+ * Products are only ever added or renamed, matching the catalog. A renamed product keeps
+ * its old trigrams, but candidates are always ranked against the current name.
+ * All methods are synchronized.
+ */
+public class ProductSearch implements ProductCatalog.Listener {
+
+    public static final int DEFAULT_LIMIT = 20;
+
+    private static final int ALPHABET = 38;
+    private static final int TRIGRAMS = ALPHABET * ALPHABET * ALPHABET;
+    private static final int MAX_TAIL = 4096;
+    // Share of the query trigrams a name needs to be a candidate at all.
+    private static final float MIN_COVERAGE = 0.5f;
+
+    private static ProductSearch instance;
+
+    // Product ids are dense, in insertion order.
+    private final BarcodeIndex idsByBarcode = new BarcodeIndex(1024);
+    private long[] barcodeKeys = new long[1024];
+    private String[] names = new String[1024];
+    private String[] displayNames = new String[1024];
+    private int size;
+
+    private final int[][] postings = new int[TRIGRAMS][];
+    private final int[] postingSizes = new int[TRIGRAMS];
+
+    // Barcode keys sorted, with their ids; plus keys not merged in yet.
+    private long[] sortedKeys = new long[0];
+    private int[] sortedIds = new int[0];
+    private final long[] tailKeys = new long[MAX_TAIL];
+    private final int[] tailIds = new int[MAX_TAIL];
+    private int tailSize;
+
+    // Query scratch, indexed by product id.
+    private int[] hits = new int[1024];
+    private int[] stamps = new int[1024];
+    private int stamp;
+    private int[] candidates = new int[1024];
+
+    /**
+     * The search over {@code catalog}, built on first use. Blocks while it reads every
+     * product name, so call it off the main thread.
+     */
+    public static synchronized ProductSearch getInstance(ProductCatalog catalog) throws IOException {
+        if (instance == null) {
+            ProductSearch search = new ProductSearch();
+            // Listen first: a product stored while the catalog is read is then added twice,
+            // which is harmless, instead of not at all.
+            catalog.addListener(search);
+            catalog.forEach((barcode, name, priceCents) -> search.add(barcode, name));
+            instance = search;
+        }
+        return instance;
+    }
+
+    @Override
+    public void onProductStored(String barcode, String name) {
+        add(barcode, name);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Adds a product, or renames it if the barcode is known. Barcodes that are not numeric are ignored. */
+    public synchronized void add(String barcode, String name) {
+        long key = ProductCatalog.encodeBarcode(barcode);
+        if (key < 0) return;
+        String normalized = normalize(name);
+
+        int slot = idsByBarcode.find(key);
+        int id;
+        if (slot >= 0) {
+            id = (int) idsByBarcode.offsetAt(slot);
+            displayNames[id] = name;
+            if (names[id].equals(normalized)) return;
+            names[id] = normalized;
+        } else {
+            id = size++;
+            if (id == names.length) grow();
+            barcodeKeys[id] = key;
+            names[id] = normalized;
+            displayNames[id] = name;
+            idsByBarcode.put(key, id, 0);
+            addToTail(key, id);
+        }
+        indexName(id, normalized);
+    }
+
+    /** The current name of {@code barcode} as it was stored, or {@code null} if it is unknown. */
+    public synchronized String getName(String barcode) {
+        long key = ProductCatalog.encodeBarcode(barcode);
+        if (key < 0) return null;
+        int slot = idsByBarcode.find(key);
+        return slot >= 0 ? displayNames[(int) idsByBarcode.offsetAt(slot)] : null;
+    }
+
+    /**
+     * Barcodes of the best matches for {@code query}, best first. A query of digits matches
+     * barcode prefixes first and names after; anything else matches names.
+     */
+    public synchronized List<String> search(String query, int limit) {
+        List<String> results = new ArrayList<>();
+        String trimmed = query.trim();
+        if (trimmed.isEmpty() || limit <= 0) return results;
+
+        int[] found = new int[limit];
+        int count = 0;
+        if (isDigits(trimmed)) count = searchBarcodes(trimmed, found, limit);
+        if (count < limit) count = searchNames(normalize(trimmed), found, count, limit);
+        for (int i = 0; i < count; i++) {
+            results.add(ProductCatalog.decodeBarcode(barcodeKeys[found[i]]));
+        }
+        return results;
+    }
+
+    /**
+     * Lower case without diacritics; runs of anything but letters and digits become one
+     * space. {@code đ} is mapped by hand because it has no decomposition.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            c = Character.toLowerCase(c);
+            if (c == 'đ') c = 'd';
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) normalized.append(' ');
+                pendingSpace = false;
+                normalized.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private int searchBarcodes(String prefix, int[] found, int limit) {
+        if (prefix.length() > ProductCatalog.MAX_BARCODE_DIGITS) return 0;
+        if (tailSize > 0) mergeTail();
+        int count = 0;
+        long value = Long.parseLong(prefix);
+        long scale = 1;
+        // A barcode of n digits starting with the prefix has a value in
+        // [prefix * 10^(n - k), (prefix + 1) * 10^(n - k)). Shortest barcodes come first:
+        // an exact match, then those with the fewest digits left.
+        for (int length = prefix.length(); length <= ProductCatalog.MAX_BARCODE_DIGITS && count < limit;
+             length++, scale *= 10) {
+            long to = key(length, (value + 1) * scale);
+            for (int i = lowerBound(key(length, value * scale)); i < sortedKeys.length && sortedKeys[i] < to
+                    && count < limit; i++) {
+                found[count++] = sortedIds[i];
+            }
+        }
+        return count;
+    }
+
+    private int searchNames(String query, int[] found, int count, int limit) {
+        if (query.isEmpty()) return count;
+        int[] trigrams = queryTrigrams(query);
+        int minHits = Math.max(1, (int) Math.ceil(trigrams.length * MIN_COVERAGE));
+
+        // Count, per product, how many distinct query trigrams its name has. A renamed
+        // product can be in a posting list twice; the stamp counts it once per trigram.
+        int candidateCount = 0;
+        for (int trigram : trigrams) {
+            int[] posting = postings[trigram];
+            if (posting == null) continue;
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            for (int i = 0, end = postingSizes[trigram]; i < end; i++) {
+                int id = posting[i];
+                if (stamps[id] == stamp) continue;
+                stamps[id] = stamp;
+                if (hits[id]++ == 0) {
+                    candidates[candidateCount++] = id;
+                }
+            }
+        }
+
+        // Keep the best limit - count candidates, skipping ids already found by barcode.
+        int room = limit - count;
+        int[] best = new int[room];
+        float[] bestScores = new float[room];
+        int bestCount = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int id = candidates[c];
+            int idHits = hits[id];
+            hits[id] = 0;
+            if (idHits < minHits || contains(found, count, id)) continue;
+
+            float score = rank(names[id], query, idHits / (float) trigrams.length);
+            if (bestCount == room && score <= bestScores[room - 1]) continue;
+            int position = bestCount < room ? bestCount++ : room - 1;
+            while (position > 0 && bestScores[position - 1] < score) {
+                best[position] = best[position - 1];
+                bestScores[position] = bestScores[position - 1];
+                position--;
+            }
+            best[position] = id;
+            bestScores[position] = score;
+        }
+
+        System.arraycopy(best, 0, found, count, bestCount);
+        return count + bestCount;
+    }
+
+    /** Trigram coverage first; a name that starts with the query, or contains it, moves ahead. */
+    private static float rank(String name, String query, float coverage) {
+        float score = coverage;
+        int at = name.indexOf(query);
+        if (at == 0) {
+            score += 1f;
+        } else if (at > 0) {
+            score += name.charAt(at - 1) == ' ' ? 0.75f : 0.5f;
+        }
+        // Among equals, the shorter name is the closer match.
+        return score - name.length() * 0.001f;
+    }
+
+    private void indexName(int id, String normalized) {
+        for (String word : normalized.split(" ")) {
+            if (word.isEmpty()) continue;
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                addPosting(trigram(padded, i), id);
+            }
+        }
+    }
+
+    private void addPosting(int trigram, int id) {
+        int[] posting = postings[trigram];
+        int length = postingSizes[trigram];
+        if (posting == null) {
+            posting = postings[trigram] = new int[4];
+        } else if (posting[length - 1] == id) {
+            // Same trigram twice in one name.
+            return;
+        } else if (length == posting.length) {
+            posting = postings[trigram] = Arrays.copyOf(posting, length * 2);
+        }
+        posting[length] = id;
+        postingSizes[trigram] = length + 1;
+    }
+
+    /** Distinct trigrams of the query; the last word gets no end padding, it may be unfinished. */
+    private static int[] queryTrigrams(String query) {
+        String[] words = query.split(" ");
+        int[] trigrams = new int[query.length() + 3 * words.length];
+        int count = 0;
+        for (int w = 0; w < words.length; w++) {
+            String padded = "  " + words[w] + (w < words.length - 1 ? " " : "");
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                int trigram = trigram(padded, i);
+                if (!contains(trigrams, count, trigram)) trigrams[count++] = trigram;
+            }
+        }
+        return Arrays.copyOf(trigrams, count);
+    }
+
+    private static int trigram(String text, int start) {
+        return (symbol(text.charAt(start)) * ALPHABET + symbol(text.charAt(start + 1))) * ALPHABET
+                + symbol(text.charAt(start + 2));
+    }
+
+    /** Space, a-z and 0-9 each have their own symbol; other letters share the last one. */
+    private static int symbol(char c) {
+        if (c == ' ') return 0;
+        if (c >= 'a' && c <= 'z') return 1 + c - 'a';
+        if (c >= '0' && c <= '9') return 27 + c - '0';
+        return ALPHABET - 1;
+    }
+
+    private void addToTail(long key, int id) {
+        if (tailSize == MAX_TAIL) mergeTail();
+        tailKeys[tailSize] = key;
+        tailIds[tailSize++] = id;
+    }
+
+    private void mergeTail() {
+        long[] keys = Arrays.copyOf(tailKeys, tailSize);
+        Arrays.sort(keys);
+        int[] ids = new int[tailSize];
+        for (int i = 0; i < tailSize; i++) {
+            ids[i] = (int) idsByBarcode.offsetAt(idsByBarcode.find(keys[i]));
+        }
+
+        long[] mergedKeys = new long[sortedKeys.length + tailSize];
+        int[] mergedIds = new int[mergedKeys.length];
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < mergedKeys.length; i++) {
+            if (b == keys.length || (a < sortedKeys.length && sortedKeys[a] < keys[b])) {
+                mergedKeys[i] = sortedKeys[a];
+                mergedIds[i] = sortedIds[a++];
+            } else {
+                mergedKeys[i] = keys[b];
+                mergedIds[i] = ids[b++];
+            }
+        }
+        sortedKeys = mergedKeys;
+        sortedIds = mergedIds;
+        tailSize = 0;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        displayNames = Arrays.copyOf(displayNames, capacity);
+        barcodeKeys = Arrays.copyOf(barcodeKeys, capacity);
+        hits = Arrays.copyOf(hits, capacity);
+        stamps = Arrays.copyOf(stamps, capacity);
+        candidates = new int[capacity];
+    }
+
+    /** As {@link ProductCatalog#encodeBarcode}; {@code value} may be 10^length as an exclusive bound. */
+    private static long key(int length, long value) {
+        return ((long) length << ProductCatalog.KEY_LENGTH_SHIFT) | value;
+    }
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+}
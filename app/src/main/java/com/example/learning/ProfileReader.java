@@ -0,0 +1,105 @@
+package com.example.learning;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.Map;
+
+/**
+ * Reads frames the way a {@link ScannerProfile} says: a fast pass limited to the profile's
+ * formats on every frame, and a {@code TRY_HARDER} pass only on every
+ * {@code tryHarderEvery}-th miss that still showed a barcode. A code that is slightly out
+ * of focus or tilted is still found within a few frames, while frames without a barcode
+ * stay cheap.
+ * <p>
+ * A miss counts as showing a barcode when the fast pass got past a UPC/EAN start guard and
+ * read the digits after it: the reader then reports a second point on the same row. A start
+ * guard alone is not enough, since texture and sensor noise produce one in most frames.
+ * Code 128 reports no points, so it only ever gets the fast pass.
+ * <p>
+ * Keeps state between frames, so one instance serves one decoding thread.
+ */
+public class ProfileReader implements Reader {
+
+    private final MultiFormatReader fast = new MultiFormatReader();
+    private final MultiFormatReader thorough;
+    private final int tryHarderEvery;
+    private int misses;
+    private int thoroughDecodes;
+    private ResultPoint lastPoint;
+    private boolean digitsSeen;
+
+    public ProfileReader(ScannerProfile profile, Map<DecodeHintType, ?> baseHints) {
+        Map<DecodeHintType, Object> fastHints = profile.hints(baseHints, false);
+        // Still forwards to the camera view's callback, which draws the points.
+        ResultPointCallback viewCallback = (ResultPointCallback) fastHints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+        fastHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, (ResultPointCallback) point -> {
+            if (lastPoint != null && lastPoint.getY() == point.getY() && lastPoint.getX() != point.getX()) {
+                digitsSeen = true;
+            }
+            lastPoint = point;
+            if (viewCallback != null) viewCallback.foundPossibleResultPoint(point);
+        });
+        fast.setHints(fastHints);
+        tryHarderEvery = profile.getTryHarderEvery();
+        if (tryHarderEvery > 0) {
+            thorough = new MultiFormatReader();
+            thorough.setHints(profile.hints(baseHints, true));
+        } else {
+            thorough = null;
+        }
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+        lastPoint = null;
+        digitsSeen = false;
+        try {
+            Result result = fast.decodeWithState(image);
+            misses = 0;
+            return result;
+        } catch (ReaderException ignored) {
+            // Fall through to the thorough pass if it is due.
+        } finally {
+            fast.reset();
+        }
+
+        if (thorough != null && digitsSeen && ++misses % tryHarderEvery == 0) {
+            try {
+                Result result = thorough.decodeWithState(image);
+                misses = 0;
+                thoroughDecodes++;
+                return result;
+            } catch (ReaderException ignored) {
+                // Reported below.
+            } finally {
+                thorough.reset();
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        return decode(image);
+    }
+
+    /** Only per-frame reader state; the miss count carries over to the next frame. */
+    @Override
+    public void reset() {
+        fast.reset();
+        if (thorough != null) thorough.reset();
+    }
+
+    /** Frames that only the {@code TRY_HARDER} pass could read. */
+    public int getThoroughDecodes() {
+        return thoroughDecodes;
+    }
+}
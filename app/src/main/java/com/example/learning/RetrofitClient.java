@@ -1,31 +1,19 @@
 package com.example.learning;
 
-import com.google.gson.internal.GsonBuildConfig;
+import android.content.Context;
 
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class RetrofitClient {
 
     private static final String BASE_URL = BuildConfig.API_KEY;
     private static Retrofit retrofit = null;
-    private GsonBuildConfig gsonBuildConfig;
 
-    public static Retrofit getClient() {
+    public static synchronized Retrofit getClient(Context context) {
         if (retrofit == null) {
-            OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                    .connectTimeout(30, TimeUnit.SECONDS)
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .writeTimeout(30, TimeUnit.SECONDS)
-                    .build();
-
             retrofit = new Retrofit.Builder()
                     .baseUrl(BASE_URL)
-                    .client(okHttpClient)
-                    .addConverterFactory(GsonConverterFactory.create())
+                    .client(NetworkClient.api(context))
                     .build();
         }
         return retrofit;
@@ -0,0 +1,37 @@
+package com.example.learning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Drops repeat reads of the same barcode. A continuously running scanner decodes a code
+ * on every frame it stays in view, so a code is reported once and then suppressed until it
+ * has been out of view for the window. Scanning the same product again after putting it
+ * down counts as a new scan.
+ */
+public class ScanDeduplicator {
+
+    private static final int MAX_TRACKED = 32;
+
+    private final long windowMs;
+    private final Map<String, Long> lastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    public ScanDeduplicator(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /** {@code true} if {@code code}, read at {@code now} (ms, monotonic), is a new scan. */
+    public synchronized boolean accept(String code, long now) {
+        Long previous = lastSeen.put(code, now);
+        return previous == null || now - previous >= windowMs;
+    }
+
+    public synchronized void reset() {
+        lastSeen.clear();
+    }
+}
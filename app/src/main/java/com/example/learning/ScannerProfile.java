@@ -0,0 +1,111 @@
+package com.example.learning;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * What the scanner looks for and where. ZXing runs one reader per enabled format over
+ * every frame, so limiting the formats to the ones on our shelves cuts the cost of the
+ * frames that hold no barcode, which is most of them. The region of interest is a centered
+ * band of the frame, as a fraction of its width and height; nothing outside it is read.
+ * {@code TRY_HARDER} scans many more rows and is only used on every
+ * {@code tryHarderEvery}-th frame where the fast pass saw a code but could not read it
+ * (0 disables it); see {@link ProfileReader}.
+ * <p>
+ * Configured with {@code scanner.formats}, {@code scanner.roiWidth},
+ * {@code scanner.roiHeight} and {@code scanner.tryHarderEvery}.
+ */
+public final class ScannerProfile {
+
+    /** EAN-13, EAN-8, UPC-A/E and Code 128 in a wide center band. */
+    public static final ScannerProfile RETAIL = new ScannerProfile("retail",
+            EnumSet.of(BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.UPC_A,
+                    BarcodeFormat.UPC_E, BarcodeFormat.CODE_128),
+            0.8f, 0.4f, 4);
+
+    /** Every format on the whole frame, as the external capture Activity was set up. */
+    public static final ScannerProfile ALL_FORMATS = new ScannerProfile("all",
+            EnumSet.allOf(BarcodeFormat.class), 1f, 1f, 0);
+
+    private final String name;
+    private final Set<BarcodeFormat> formats;
+    private final float roiWidth;
+    private final float roiHeight;
+    private final int tryHarderEvery;
+
+    public ScannerProfile(String name, Set<BarcodeFormat> formats, float roiWidth, float roiHeight,
+                          int tryHarderEvery) {
+        if (formats.isEmpty()) throw new IllegalArgumentException("No barcode formats in " + name);
+        this.name = name;
+        this.formats = Collections.unmodifiableSet(EnumSet.copyOf(formats));
+        this.roiWidth = clampFraction(roiWidth);
+        this.roiHeight = clampFraction(roiHeight);
+        this.tryHarderEvery = Math.max(0, tryHarderEvery);
+    }
+
+    /** {@link #RETAIL} with whatever the properties override. */
+    public static ScannerProfile fromProperties(Properties properties) {
+        Set<BarcodeFormat> formats = RETAIL.formats;
+        String formatList = properties.getProperty("scanner.formats", "").trim();
+        if (!formatList.isEmpty()) {
+            formats = EnumSet.noneOf(BarcodeFormat.class);
+            for (String format : formatList.split(",")) {
+                formats.add(BarcodeFormat.valueOf(format.trim()));
+            }
+        }
+        return new ScannerProfile("configured", formats,
+                Float.parseFloat(properties.getProperty("scanner.roiWidth", String.valueOf(RETAIL.roiWidth)).trim()),
+                Float.parseFloat(properties.getProperty("scanner.roiHeight", String.valueOf(RETAIL.roiHeight)).trim()),
+                Integer.parseInt(properties.getProperty("scanner.tryHarderEvery",
+                        String.valueOf(RETAIL.tryHarderEvery)).trim()));
+    }
+
+    public String getName() { return name; }
+    public Set<BarcodeFormat> getFormats() { return formats; }
+    public float getRoiWidth() { return roiWidth; }
+    public float getRoiHeight() { return roiHeight; }
+    public int getTryHarderEvery() { return tryHarderEvery; }
+
+    /** Decode hints for this profile on top of {@code baseHints}. */
+    public Map<DecodeHintType, Object> hints(Map<DecodeHintType, ?> baseHints, boolean tryHarder) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        if (baseHints != null) hints.putAll(baseHints);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        } else {
+            hints.remove(DecodeHintType.TRY_HARDER);
+        }
+        return hints;
+    }
+
+    /**
+     * The region of interest of {@code frame}. On the device the camera view crops to its
+     * framing rectangle, which is sized from the same fractions, so this is for frames
+     * that come from elsewhere.
+     */
+    public LuminanceSource crop(LuminanceSource frame) {
+        if ((roiWidth >= 1f && roiHeight >= 1f) || !frame.isCropSupported()) return frame;
+        int width = Math.max(1, Math.round(frame.getWidth() * roiWidth));
+        int height = Math.max(1, Math.round(frame.getHeight() * roiHeight));
+        return frame.crop((frame.getWidth() - width) / 2, (frame.getHeight() - height) / 2, width, height);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + formats.size() + " formats, ROI " + roiWidth + "x" + roiHeight
+                + (tryHarderEvery > 0 ? ", TRY_HARDER every " + tryHarderEvery : "") + ")";
+    }
+
+    private static float clampFraction(float fraction) {
+        return Math.max(0.1f, Math.min(1f, fraction));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.util.DisplayMetrics;
+
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.RequestOptions;
+
+/**
+ * Glide options shared by every slide decode, whether preloaded or loaded on demand.
+ * <p>
+ * Images are subsampled while decoding so that the bitmap is never larger than the
+ * screen, then center-cropped to exactly the screen size. Opaque images are decoded as
+ * RGB_565, half the memory of ARGB_8888; images with alpha keep ARGB_8888. Because all
+ * slides end up with the same dimensions and config, Glide's bitmap pool can hand the
+ * previous slide's bitmap straight to the next decode instead of allocating a new one.
+ * Hardware bitmaps cannot be reused that way, so they are disabled.
+ * <p>
+ * The cached file on disk is already local, so Glide's disk cache is skipped. The
+ * memory cache is optional. Glide sizes it to about two ARGB_8888 screens, which holds
+ * the previous, current and next RGB_565 slides. A looping playlist is then decoded
+ * once rather than on every pass.
+ */
+public final class SlideImageOptions {
+
+    private SlideImageOptions() {
+    }
+
+    public static RequestOptions forScreen(Context context, boolean memoryCache) {
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        return new RequestOptions()
+                .override(dm.widthPixels, dm.heightPixels)
+                .downsample(DownsampleStrategy.CENTER_OUTSIDE)
+                .centerCrop()
+                .format(DecodeFormat.PREFER_RGB_565)
+                .disallowHardwareConfig()
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .skipMemoryCache(!memoryCache);
+    }
+}
@@ -2,28 +2,21 @@ package com.example.learning;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import androidx.appcompat.app.AppCompatActivity;
-import com.airbnb.lottie.LottieAnimationView;
 
+/**
+ * Launcher entry point. It forwards to {@link MainActivity} at once; MainActivity shows the
+ * splash animation itself for exactly as long as its first item needs to get on screen.
+ */
 public class SplashActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_splash);
+        StartupTrace.mark("launcher");
 
-        LottieAnimationView lottieAnimationView = findViewById(R.id.lottieAnimationView);
-
-
-        lottieAnimationView.playAnimation();
-
-
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish();
-        }, 3000);
+        startActivity(new Intent(SplashActivity.this, MainActivity.class));
+        finish();
+        overridePendingTransition(0, 0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.example.learning;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Times the cold start from process start to the first media frame. Each phase is logged
+ * under the "Startup" tag as it completes. When the first frame is up, one line per start
+ * goes to {@code startup_times.csv} in the files dir, tagged with the app version, so
+ * time-to-first-frame can be compared between releases:
+ * {@code version,firstFrameMs,phase=ms,...}. Times are from process start.
+ */
+public final class StartupTrace {
+
+    private static final String HISTORY_FILE = "startup_times.csv";
+    private static final int HISTORY_LINES = 200;
+
+    private static final StringBuilder phases = new StringBuilder();
+    private static boolean finished;
+
+    private StartupTrace() {
+    }
+
+    /** Records that {@code phase} has completed. Phases after the first frame are ignored. */
+    public static synchronized void mark(String phase) {
+        if (finished) return;
+        long at = sinceProcessStart();
+        phases.append(',').append(phase).append('=').append(at);
+        Log.d("Startup", phase + " at " + at + " ms");
+    }
+
+    /** Records the first media frame and stores this start in the history file. */
+    public static void firstFrame(Context context) {
+        String line;
+        synchronized (StartupTrace.class) {
+            if (finished) return;
+            finished = true;
+            long at = sinceProcessStart();
+            Log.i("Startup", "First frame at " + at + " ms" + phases);
+            line = BuildConfig.VERSION_NAME + "," + at + phases;
+        }
+
+        File history = new File(context.getFilesDir(), HISTORY_FILE);
+        new Thread(() -> append(history, line), "startup-trace").start();
+    }
+
+    private static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    private static void append(File history, String line) {
+        Deque<String> lines = new ArrayDeque<>();
+        if (history.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(history), StandardCharsets.UTF_8))) {
+                String previous;
+                while ((previous = reader.readLine()) != null) {
+                    lines.add(previous);
+                    if (lines.size() >= HISTORY_LINES) lines.removeFirst();
+                }
+            } catch (IOException e) {
+                lines.clear();
+            }
+        }
+        lines.add(line);
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(history), StandardCharsets.UTF_8)) {
+            for (String entry : lines) {
+                writer.write(entry);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e("Startup", "Failed to write startup history", e);
+        }
+    }
+}
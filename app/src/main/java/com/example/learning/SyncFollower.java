@@ -0,0 +1,164 @@
+package com.example.learning;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * Follows a {@link SyncMaster}. It polls the master's clock over UDP, estimates the clock
+ * offset the way NTP does, and reports the master's timeline translated to the local clock.
+ * <p>
+ * Each exchange gives offset = ((t2 - t1) + (t3 - t4)) / 2 and round trip
+ * (t4 - t1) - (t3 - t2). Only the exchange with the shortest round trip out of the last
+ * {@link #WINDOW} is trusted, because queueing delay is what makes the offset
+ * asymmetric. On a LAN that sample's error is well under one frame. The first samples
+ * are taken in a quick burst, so followers lock on within a second of starting.
+ */
+public class SyncFollower implements Closeable {
+
+    static final int WINDOW = 8;
+    private static final int MIN_SAMPLES = 4;
+    private static final long BURST_INTERVAL_MS = 50;
+
+    public interface Listener {
+        /**
+         * Called on the sync thread after every accepted exchange once the offset is
+         * trusted. {@code epoch} is the master's timeline epoch on the local clock.
+         */
+        void onTimeline(long epoch, long fingerprint);
+    }
+
+    private final String host;
+    private final int port;
+    private final LongSupplier clock;
+    private final long intervalMs;
+    private final Listener listener;
+    private final DatagramSocket socket;
+    private final Thread thread;
+    private final long[] offsets = new long[WINDOW];
+    private final long[] delays = new long[WINDOW];
+    private int samples;
+    private volatile boolean closed;
+
+    public SyncFollower(String host, int port, LongSupplier clock, long intervalMs, Listener listener)
+            throws SocketException {
+        this.host = host;
+        this.port = port;
+        this.clock = clock;
+        this.intervalMs = Math.max(BURST_INTERVAL_MS, intervalMs);
+        this.listener = listener;
+        this.socket = new DatagramSocket();
+        this.thread = new Thread(this::poll, "sync-follower");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /** {@code true} once enough exchanges were seen to trust {@link #getOffset()}. */
+    public synchronized boolean isSynchronized() {
+        return samples >= MIN_SAMPLES;
+    }
+
+    /** Master clock minus local clock, from the best recent exchange. */
+    public synchronized long getOffset() {
+        return offsets[bestSample()];
+    }
+
+    /** Round trip of the exchange the offset was taken from; an upper bound on its error. */
+    public synchronized long getRoundTrip() {
+        return delays[bestSample()];
+    }
+
+    public long toLocalTime(long masterTime) {
+        return masterTime - getOffset();
+    }
+
+    synchronized void addSample(long t1, long t2, long t3, long t4) {
+        int slot = samples % WINDOW;
+        offsets[slot] = ((t2 - t1) + (t3 - t4)) / 2;
+        delays[slot] = (t4 - t1) - (t3 - t2);
+        samples++;
+    }
+
+    private int bestSample() {
+        int count = Math.min(samples, WINDOW);
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (delays[i] < delays[best]) best = i;
+        }
+        return best;
+    }
+
+    private void poll() {
+        InetSocketAddress master;
+        try {
+            master = new InetSocketAddress(host, port);
+            socket.setSoTimeout((int) intervalMs);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e("Sync", "Cannot reach sync master " + host + ":" + port, e);
+            return;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(SyncProtocol.REQUEST_SIZE);
+        byte[] in = new byte[64];
+        DatagramPacket response = new DatagramPacket(in, in.length);
+        int seq = 0;
+        while (!closed) {
+            long sentAt = clock.getAsLong();
+            try {
+                SyncProtocol.writeRequest(out, ++seq, sentAt);
+                socket.send(new DatagramPacket(out.array(), out.limit(), master));
+                receive(response, in, seq);
+            } catch (SocketTimeoutException e) {
+                continue;
+            } catch (IOException e) {
+                if (closed) return;
+                Log.w("Sync", "Sync exchange failed: " + e.getMessage());
+            }
+
+            long wait = (isSynchronized() ? intervalMs : BURST_INTERVAL_MS) - (clock.getAsLong() - sentAt);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Waits for the answer to {@code seq}; stale answers from earlier requests are dropped. */
+    private void receive(DatagramPacket packet, byte[] in, int seq) throws IOException {
+        while (true) {
+            packet.setData(in);
+            socket.receive(packet);
+            long receivedAt = clock.getAsLong();
+
+            SyncProtocol.Response response = SyncProtocol.readResponse(ByteBuffer.wrap(in, 0, packet.getLength()));
+            if (response == null || response.seq != seq) continue;
+
+            addSample(response.t1, response.t2, response.t3, receivedAt);
+            if (isSynchronized() && response.fingerprint != 0) {
+                listener.onTimeline(toLocalTime(response.epoch), response.fingerprint);
+            }
+            return;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        socket.close();
+    }
+}
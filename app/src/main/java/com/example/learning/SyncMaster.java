@@ -0,0 +1,83 @@
+package com.example.learning;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * Time and timeline master for a video wall. It answers follower time requests over UDP
+ * with its receive and send timestamps, its current playlist epoch and its timeline
+ * fingerprint. It keeps no per-follower state, so followers can join and leave at any time.
+ */
+public class SyncMaster implements Closeable {
+
+    public interface Timeline {
+        /** Epoch of the running timeline on the master clock. */
+        long getEpoch();
+
+        /** Fingerprint of the running timeline, or 0 while nothing is playing. */
+        long getFingerprint();
+    }
+
+    private final DatagramSocket socket;
+    private final LongSupplier clock;
+    private final Timeline timeline;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public SyncMaster(int port, LongSupplier clock, Timeline timeline) throws SocketException {
+        this.socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port));
+        this.clock = clock;
+        this.timeline = timeline;
+        this.thread = new Thread(this::serve, "sync-master");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    private void serve() {
+        byte[] in = new byte[64];
+        ByteBuffer out = ByteBuffer.allocate(SyncProtocol.RESPONSE_SIZE);
+        DatagramPacket packet = new DatagramPacket(in, in.length);
+        while (!closed) {
+            try {
+                packet.setData(in);
+                socket.receive(packet);
+                long received = clock.getAsLong();
+
+                long[] request = SyncProtocol.readRequest(ByteBuffer.wrap(in, 0, packet.getLength()));
+                if (request == null) continue;
+
+                long fingerprint = timeline.getFingerprint();
+                long epoch = fingerprint != 0 ? timeline.getEpoch() : 0;
+                SyncProtocol.writeResponse(out, new SyncProtocol.Response(
+                        (int) request[0], request[1], received, clock.getAsLong(), epoch, fingerprint));
+                packet.setData(out.array(), 0, out.limit());
+                socket.send(packet);
+            } catch (IOException e) {
+                if (!closed) Log.e("Sync", "Master failed to answer", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        socket.close();
+    }
+}
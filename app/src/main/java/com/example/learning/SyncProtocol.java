@@ -0,0 +1,103 @@
+package com.example.learning;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Wire format for LAN playback sync. A follower sends a time request stamped with its
+ * own clock; the master answers with the NTP timestamps plus its current timeline.
+ * <pre>
+ * request:  magic(4) version(1) type(1) seq(4) t1(8)
+ * response: magic(4) version(1) type(1) seq(4) t1(8) t2(8) t3(8) epoch(8) fingerprint(8)
+ * </pre>
+ * All times are milliseconds on the sender's monotonic clock. A fingerprint of 0 means
+ * the master has no running timeline yet.
+ */
+final class SyncProtocol {
+
+    static final int DEFAULT_PORT = 45454;
+    static final int MAGIC = 0x4D535943;
+    static final byte VERSION = 1;
+    static final byte TIME_REQUEST = 1;
+    static final byte TIME_RESPONSE = 2;
+    static final int REQUEST_SIZE = 18;
+    static final int RESPONSE_SIZE = 50;
+
+    static final class Response {
+        final int seq;
+        final long t1;
+        final long t2;
+        final long t3;
+        final long epoch;
+        final long fingerprint;
+
+        Response(int seq, long t1, long t2, long t3, long epoch, long fingerprint) {
+            this.seq = seq;
+            this.t1 = t1;
+            this.t2 = t2;
+            this.t3 = t3;
+            this.epoch = epoch;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private SyncProtocol() {
+    }
+
+    static void writeRequest(ByteBuffer buffer, int seq, long t1) {
+        buffer.clear();
+        buffer.putInt(MAGIC).put(VERSION).put(TIME_REQUEST).putInt(seq).putLong(t1);
+        buffer.flip();
+    }
+
+    static void writeResponse(ByteBuffer buffer, Response response) {
+        buffer.clear();
+        buffer.putInt(MAGIC).put(VERSION).put(TIME_RESPONSE).putInt(response.seq)
+                .putLong(response.t1).putLong(response.t2).putLong(response.t3)
+                .putLong(response.epoch).putLong(response.fingerprint);
+        buffer.flip();
+    }
+
+    /** Returns the request's {@code [seq, t1]}, or {@code null} for anything else. */
+    static long[] readRequest(ByteBuffer buffer) {
+        if (!readHeader(buffer, TIME_REQUEST, REQUEST_SIZE)) return null;
+        return new long[] {buffer.getInt(), buffer.getLong()};
+    }
+
+    static Response readResponse(ByteBuffer buffer) {
+        if (!readHeader(buffer, TIME_RESPONSE, RESPONSE_SIZE)) return null;
+        try {
+            return new Response(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getLong(), buffer.getLong());
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static boolean readHeader(ByteBuffer buffer, byte type, int size) {
+        return buffer.remaining() >= size
+                && buffer.getInt() == MAGIC
+                && buffer.get() == VERSION
+                && buffer.get() == type;
+    }
+
+    /**
+     * Identifies a timeline by its URLs and durations (FNV-1a), so a follower only adopts
+     * the master's epoch when both play the same sequence. Never returns 0.
+     */
+    static long fingerprint(List<String> urls, long[] durations) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < urls.size(); i++) {
+            for (byte b : urls.get(i).getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            long duration = i < durations.length ? durations[i] : 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash = (hash ^ ((duration >>> shift) & 0xff)) * 0x100000001b3L;
+            }
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.learning;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the download rate actually achieved over the last {@link #WINDOW_SECONDS}
+ * seconds, in per-second buckets.
+ */
+public class ThroughputMeter {
+
+    static final int WINDOW_SECONDS = 10;
+
+    private final long origin = System.nanoTime();
+    private final long[] buckets = new long[WINDOW_SECONDS];
+    private long currentSecond = -1;
+    private long totalBytes;
+
+    public synchronized void record(long bytes) {
+        advance(nowSeconds());
+        buckets[(int) (currentSecond % WINDOW_SECONDS)] += bytes;
+        totalBytes += bytes;
+    }
+
+    /** Average over the window, including idle seconds. */
+    public synchronized long getBytesPerSecond() {
+        advance(nowSeconds());
+        long sum = 0;
+        for (long bucket : buckets) sum += bucket;
+        return sum / WINDOW_SECONDS;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void advance(long second) {
+        if (currentSecond < 0 || second - currentSecond >= WINDOW_SECONDS) {
+            Arrays.fill(buckets, 0);
+        } else {
+            for (long s = currentSecond + 1; s <= second; s++) {
+                buckets[(int) (s % WINDOW_SECONDS)] = 0;
+            }
+        }
+        currentSecond = Math.max(currentSecond, second);
+    }
+
+    private long nowSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - origin);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.learning;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits a byte stream to a rate. Tokens refill continuously up to one second's worth
+ * of burst. A caller may take more tokens than are available; the bucket goes into
+ * debt and the caller sleeps until the debt is paid back. Concurrent callers therefore
+ * share the rate instead of each getting it in full.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    /** {@code bytesPerSecond <= 0} means unlimited. */
+    public TokenBucket(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    public synchronized void setRate(long bytesPerSecond) {
+        refill(System.nanoTime());
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        tokens = Math.min(tokens, this.bytesPerSecond);
+    }
+
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /** Takes {@code bytes} tokens, sleeping as long as the rate requires. */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            if (bytesPerSecond == 0) return;
+            long now = System.nanoTime();
+            refill(now);
+            tokens -= bytes;
+            if (tokens >= 0) return;
+            waitNanos = (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    private void refill(long now) {
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + (double) (now - refilledAt) * bytesPerSecond / NANOS_PER_SECOND);
+        }
+        refilledAt = now;
+    }
+}
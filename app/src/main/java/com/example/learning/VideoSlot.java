@@ -0,0 +1,186 @@
+package com.example.learning;
+
+import android.graphics.Matrix;
+import android.graphics.SurfaceTexture;
+import android.media.MediaPlayer;
+import android.util.Log;
+import android.view.Surface;
+import android.view.TextureView;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * One of two video surfaces used for gapless playback. A slot can be prepared while it is
+ * still transparent, so the next video is decoded and waiting before the current item
+ * ends; {@link Listener#onFirstFrame} tells the caller when it is safe to swap it in.
+ */
+public class VideoSlot implements TextureView.SurfaceTextureListener {
+
+    public interface Listener {
+        void onFirstFrame(VideoSlot slot);
+        void onCompletion(VideoSlot slot);
+        void onError(VideoSlot slot, int what, int extra);
+    }
+
+    private enum State { IDLE, PREPARING, PREPARED, ERROR }
+
+    private final TextureView textureView;
+    private MediaPlayer player;
+    private Surface surface;
+    private State state = State.IDLE;
+    private String mediaId;
+    private Listener listener;
+    private Runnable onStarted;
+    private int videoWidth;
+    private int videoHeight;
+
+    public VideoSlot(TextureView textureView) {
+        this.textureView = textureView;
+        textureView.setAlpha(0f);
+        textureView.setSurfaceTextureListener(this);
+        if (textureView.isAvailable()) {
+            surface = new Surface(textureView.getSurfaceTexture());
+        }
+    }
+
+    /** Starts decoding {@code file} in the background; the slot stays invisible. */
+    public void prepare(String mediaId, File file) {
+        release();
+        listener = null;
+        this.mediaId = mediaId;
+        state = State.PREPARING;
+
+        player = new MediaPlayer();
+        player.setOnPreparedListener(mp -> {
+            state = State.PREPARED;
+            if (onStarted != null) startPlayback();
+        });
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START && listener != null) {
+                listener.onFirstFrame(this);
+            }
+            return false;
+        });
+        player.setOnCompletionListener(mp -> {
+            if (listener != null) listener.onCompletion(this);
+        });
+        player.setOnErrorListener((mp, what, extra) -> {
+            state = State.ERROR;
+            if (listener != null) listener.onError(this, what, extra);
+            return true;
+        });
+        player.setOnVideoSizeChangedListener((mp, width, height) -> applyCenterCrop(width, height));
+
+        try {
+            player.setDataSource(file.getPath());
+            if (surface != null) player.setSurface(surface);
+            player.setLooping(false);
+            player.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            Log.e("Video", "Failed to prepare " + file.getName(), e);
+            state = State.ERROR;
+        }
+    }
+
+    /** {@code true} if this slot is preparing or has prepared {@code mediaId}. */
+    public boolean holds(String mediaId) {
+        return mediaId != null && mediaId.equals(this.mediaId) && state != State.IDLE;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts playback as soon as the player is prepared; {@code onStarted} runs at that
+     * point. A slot that already failed reports the error immediately.
+     */
+    public void start(Runnable onStarted) {
+        this.onStarted = onStarted;
+        if (state == State.PREPARED) {
+            startPlayback();
+        } else if (state == State.ERROR && listener != null) {
+            listener.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+        }
+    }
+
+    public int getDuration() {
+        return state == State.PREPARED ? player.getDuration() : -1;
+    }
+
+    public void pause() {
+        if (state == State.PREPARED && player.isPlaying()) player.pause();
+    }
+
+    public void show() {
+        textureView.setAlpha(1f);
+    }
+
+    /** Hides the slot and frees its decoder. */
+    public void stop() {
+        textureView.setAlpha(0f);
+        release();
+    }
+
+    public void release() {
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+        state = State.IDLE;
+        mediaId = null;
+        onStarted = null;
+        videoWidth = 0;
+        videoHeight = 0;
+    }
+
+    private void startPlayback() {
+        Runnable started = onStarted;
+        onStarted = null;
+        player.start();
+        if (started != null) started.run();
+    }
+
+    /** Scales the texture so the video fills the view, cropping the overflow. */
+    private void applyCenterCrop(int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        videoWidth = width;
+        videoHeight = height;
+
+        float viewWidth = textureView.getWidth();
+        float viewHeight = textureView.getHeight();
+        if (viewWidth == 0 || viewHeight == 0) return;
+
+        float scale = Math.max(viewWidth / width, viewHeight / height);
+        Matrix matrix = new Matrix();
+        matrix.setScale(width * scale / viewWidth, height * scale / viewHeight, viewWidth / 2f, viewHeight / 2f);
+        textureView.setTransform(matrix);
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int width, int height) {
+        surface = new Surface(surfaceTexture);
+        if (player != null) player.setSurface(surface);
+        applyCenterCrop(videoWidth, videoHeight);
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int width, int height) {
+        applyCenterCrop(videoWidth, videoHeight);
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
+        if (player != null) player.setSurface(null);
+        if (surface != null) {
+            surface.release();
+            surface = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.learning;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BandwidthPolicyTest {
+
+    private static final BandwidthPolicy POLICY = new BandwidthPolicy(256 * 1024, 0, 22, 6, true);
+
+    @Test
+    public void nightWindowWrapsPastMidnight() {
+        for (int hour : new int[]{22, 23, 0, 3, 5}) {
+            assertTrue("hour " + hour, POLICY.isOffPeak(at(hour, 0)));
+            assertEquals(0, POLICY.rateAt(at(hour, 0)));
+            assertFalse(POLICY.shouldDeferPrefetch(at(hour, 0)));
+        }
+        for (int hour : new int[]{6, 12, 21}) {
+            assertFalse("hour " + hour, POLICY.isOffPeak(at(hour, 0)));
+            assertEquals(256 * 1024, POLICY.rateAt(at(hour, 0)));
+            assertTrue(POLICY.shouldDeferPrefetch(at(hour, 0)));
+        }
+    }
+
+    @Test
+    public void nightWindowWithinOneDay() {
+        BandwidthPolicy policy = new BandwidthPolicy(0, 0, 1, 5, false);
+        assertFalse(policy.isOffPeak(at(0, 59)));
+        assertTrue(policy.isOffPeak(at(1, 0)));
+        assertTrue(policy.isOffPeak(at(4, 59)));
+        assertFalse(policy.isOffPeak(at(5, 0)));
+    }
+
+    @Test
+    public void equalHoursMeanNoNightWindow() {
+        BandwidthPolicy policy = new BandwidthPolicy(1024, 2048, 3, 3, true);
+        assertFalse(policy.isOffPeak(at(3, 0)));
+        assertEquals(1024, policy.rateAt(at(3, 0)));
+        // Deferring would wait for a night that never comes.
+        assertFalse(policy.shouldDeferPrefetch(at(12, 0)));
+    }
+
+    @Test
+    public void timeUntilOffPeak() {
+        assertEquals(TimeUnit.MINUTES.toMillis(30), POLICY.millisUntilOffPeak(at(21, 30)));
+        assertEquals(TimeUnit.HOURS.toMillis(16), POLICY.millisUntilOffPeak(at(6, 0)));
+        assertEquals(0, POLICY.millisUntilOffPeak(at(23, 0)));
+        assertEquals(TimeUnit.DAYS.toMillis(1), BandwidthPolicy.millisUntilHour(22, at(22, 0)));
+    }
+
+    @Test
+    public void propertiesDefaultToUnlimited() {
+        BandwidthPolicy policy = BandwidthPolicy.fromProperties(new Properties());
+        assertEquals(0, policy.rateAt(at(12, 0)));
+        assertFalse(policy.shouldDeferPrefetch(at(12, 0)));
+
+        Properties properties = new Properties();
+        properties.setProperty("bandwidth.dayKBps", " 128 ");
+        properties.setProperty("bandwidth.nightStartHour", "23");
+        assertEquals(128 * 1024, BandwidthPolicy.fromProperties(properties).rateAt(at(22, 0)));
+        assertEquals(0, BandwidthPolicy.fromProperties(properties).rateAt(at(23, 0)));
+    }
+
+    private static Calendar at(int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2026, Calendar.MARCH, 10, hour, minute, 0);
+        return calendar;
+    }
+}
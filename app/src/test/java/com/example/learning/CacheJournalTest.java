@@ -0,0 +1,58 @@
+package com.example.learning;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CacheJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void appendAfterTornLineStartsOnFreshLine() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "journal");
+        CacheJournal journal = new CacheJournal(file);
+        journal.rewrite(Collections.singletonList(new CacheJournal.Record(entry("https://cdn/a.mp4"), 1)));
+        journal.close();
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            // A crash in the middle of an append, cut inside a multi-byte character.
+            output.write("PUT\t=https://cdn/č".getBytes(StandardCharsets.UTF_8), 0, 18);
+        }
+
+        journal = new CacheJournal(file);
+        assertEquals(1, journal.read().size());
+        journal.appendPut(entry("https://cdn/b.jpg"), 2);
+        journal.close();
+
+        Map<String, CacheJournal.Record> records = new CacheJournal(file).read();
+        assertEquals(2, records.size());
+        assertEquals(2, records.get("https://cdn/b.jpg").getLastAccess());
+    }
+
+    @Test
+    public void tornHeaderIsCorrupt() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "journal");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write("media-cache-jour".getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            new CacheJournal(file).read();
+            fail("Expected the journal to be rebuilt");
+        } catch (CacheJournal.CorruptJournalException expected) {
+            // Appending after a partial header would never parse again.
+        }
+    }
+
+    private static MediaCacheEntry entry(String url) {
+        return new MediaCacheEntry(url, CacheKeys.urlKey(url), 10, "ab", "video/mp4", "\"v1\"", null, 5);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.learning;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CatalogImporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void importsCsvWithSemicolonsAndQuotes() throws Exception {
+        String csv = "\uFEFFbarcode;name;price;version\r\n"
+                + "385123456789;Dukat Mlijeko 1L;1,50;1\r\n"
+                + "0012345678905;\"Keks \"\"Plazma\"\"; 300g\";2,35;1\r\n"
+                + "not-a-barcode;Pogrešno;1,00;1\r\n"
+                + "401440033982;Nutella 350g;;1\r\n";
+        try (ProductCatalog catalog = new ProductCatalog(temporaryFolder.newFolder())) {
+            CatalogImporter.Result result = new CatalogImporter(catalog, 2).importStream(stream(csv), null);
+
+            assertEquals(4, result.getRows());
+            assertEquals(2, result.getWritten());
+            assertEquals(2, result.getRejected());
+            assertEquals(150, catalog.getPriceCents("385123456789"));
+            assertEquals("Keks \"Plazma\"; 300g", catalog.get("0012345678905").getName());
+        }
+    }
+
+    @Test
+    public void deltaOnlyWritesNewerRows() throws Exception {
+        String full = "[{\"barcode\": \"385123456789\", \"name\": \"Dukat Mlijeko 1L\", \"price\": 1.50, \"version\": 10},"
+                + " {\"barcode\": 590123412345, \"name\": \"Argeta\", \"price\": \"3.20\", \"version\": 10, \"stock\": 4}]";
+        String delta = "barcode,price,version\n"
+                + "385123456789,1.65,11\n"
+                + "590123412345,9.99,9\n"
+                + "590123412345,3.10,12\n"
+                + "590123412345,3.00,11\n";
+        try (ProductCatalog catalog = new ProductCatalog(temporaryFolder.newFolder())) {
+            CatalogImporter importer = new CatalogImporter(catalog);
+            assertEquals(2, importer.importStream(stream(full), null).getWritten());
+            assertEquals(0, importer.importStream(stream(full), null).getWritten());
+
+            CatalogImporter.Result result = importer.importStream(stream(delta), null);
+            assertEquals(2, result.getWritten());
+            assertEquals(165, catalog.getPriceCents("385123456789"));
+            assertEquals("Dukat Mlijeko 1L", catalog.get("385123456789").getName());
+            assertEquals(310, catalog.getPriceCents("590123412345"));
+        }
+    }
+
+    @Test
+    public void feedWithoutVersionsOnlyWritesChangedRows() throws Exception {
+        String full = "barcode,name,price\n"
+                + "385123456789,Dukat Mlijeko 1L,1.50\n"
+                + "590123412345,Argeta,3.20\n"
+                + "401440033982,Nutella 350g,5.90\n";
+        String nextNight = "barcode,name,price\n"
+                + "385123456789,Dukat Mlijeko 1L,1.65\n"
+                + "590123412345,Argeta Classic,3.20\n"
+                + "401440033982,Nutella 350g,5.90\n";
+        File dir = temporaryFolder.newFolder();
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            CatalogImporter importer = new CatalogImporter(catalog);
+            assertEquals(3, importer.importStream(stream(full), null).getWritten());
+            long length = new File(dir, ProductCatalog.DATA_FILE).length();
+
+            assertEquals(0, importer.importStream(stream(full), null).getWritten());
+            assertEquals(length, new File(dir, ProductCatalog.DATA_FILE).length());
+
+            assertEquals(2, importer.importStream(stream(nextNight), null).getWritten());
+            assertEquals(165, catalog.getPriceCents("385123456789"));
+            assertEquals("Argeta Classic", catalog.get("590123412345").getName());
+        }
+    }
+
+    @Test
+    public void lookupsContinueDuringImport() throws Exception {
+        int rows = 50_000;
+        StringBuilder csv = new StringBuilder("barcode,name,price,version\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(3870000000000L + i).append(",Artikal ").append(i).append(',')
+                    .append(i % 10_000).append(".99,1\n");
+        }
+
+        try (ProductCatalog catalog = new ProductCatalog(temporaryFolder.newFolder())) {
+            catalog.put("385123456789", "Dukat Mlijeko 1L", 150, 1);
+            AtomicBoolean importing = new AtomicBoolean(true);
+            AtomicLong lookups = new AtomicLong();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread scanner = new Thread(() -> {
+                try {
+                    while (importing.get()) {
+                        assertEquals(150, catalog.getPriceCents("385123456789"));
+                        catalog.get("3870000000000");
+                        lookups.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            scanner.start();
+
+            CatalogImporter.Result result;
+            try {
+                result = new CatalogImporter(catalog).importStream(stream(csv.toString()), null);
+            } finally {
+                importing.set(false);
+                scanner.join();
+            }
+
+            assertNull(failure.get());
+            assertTrue(lookups.get() > 0);
+            assertEquals(rows, result.getWritten());
+            assertEquals(rows + 1, catalog.size());
+            assertEquals(999, catalog.getPriceCents("3870000000009"));
+        }
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
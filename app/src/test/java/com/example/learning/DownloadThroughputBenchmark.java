@@ -0,0 +1,138 @@
+package com.example.learning;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the old 8 KB byte[] copy loop with {@link MediaDownloader}'s FileChannel path,
+ * reporting throughput and bytes allocated on the downloading thread. The channel path
+ * also computes the SHA-256 of the body, so it does strictly more work per byte.
+ * <p>
+ * Run with {@code ./gradlew test -Dbenchmark=true -Dbenchmark.sizesMb=1,16,64,500}.
+ */
+public class DownloadThroughputBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void compareCopyLoopWithChannelTransfer() throws Exception {
+        String[] sizes = System.getProperty("benchmark.sizesMb", "1,16,64").split(",");
+        System.out.printf("%8s %-14s %12s %14s%n", "size", "path", "MB/s", "alloc KB");
+
+        for (String size : sizes) {
+            int bytes = Integer.parseInt(size.trim()) * 1024 * 1024;
+            Buffer body = randomBody(bytes);
+
+            // Warm up both paths once so class loading and JIT do not skew the first size.
+            runLegacy(body, bytes);
+            runChannel(body, bytes);
+
+            report(size + " MB", "byte[] loop", bytes, () -> runLegacy(body, bytes));
+            report(size + " MB", "FileChannel", bytes, () -> runChannel(body, bytes));
+        }
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    private void report(String size, String path, int bytes, Run run) throws Exception {
+        long totalNanos = 0;
+        long totalAllocated = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            run.run();
+            totalNanos += System.nanoTime() - start;
+            totalAllocated += allocatedBytes() - allocatedBefore;
+        }
+        double seconds = totalNanos / 1e9 / ROUNDS;
+        System.out.printf("%8s %-14s %12.1f %14d%n", size, path,
+                bytes / 1024.0 / 1024.0 / seconds, totalAllocated / ROUNDS / 1024);
+    }
+
+    /** The copy loop MediaCacheManager used before the NIO path. */
+    private void runLegacy(Buffer body, int bytes) throws Exception {
+        server.enqueue(new MockResponse().setBody(body.clone()));
+        File target = temporaryFolder.newFile();
+        Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute();
+        InputStream input = response.body().byteStream();
+        FileOutputStream output = new FileOutputStream(target);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        output.close();
+        input.close();
+        assertEquals(bytes, target.length());
+        target.delete();
+    }
+
+    private void runChannel(Buffer body, int bytes) throws Exception {
+        server.enqueue(new MockResponse().setBody(body.clone()));
+        File target = new File(temporaryFolder.getRoot(), "channel-" + System.nanoTime());
+        new MediaDownloader(client, new BandwidthLimiter(BandwidthPolicy.UNLIMITED), 1, 0)
+                .download(server.url("/").toString(), target, null);
+        assertEquals(bytes, target.length());
+        target.delete();
+    }
+
+    private static Buffer randomBody(int bytes) {
+        Random random = new Random(bytes);
+        byte[] chunk = new byte[64 * 1024];
+        Buffer buffer = new Buffer();
+        for (int written = 0; written < bytes; written += chunk.length) {
+            random.nextBytes(chunk);
+            buffer.write(chunk, 0, Math.min(chunk.length, bytes - written));
+        }
+        return buffer;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.learning;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a sync master and followers on localhost. Every participant gets its own skewed
+ * clock, so the test checks that followers recover the skew and end up with the same
+ * item boundaries as the master. One follower runs in a separate JVM.
+ */
+public class LanSyncTest {
+
+    /** One 60 Hz frame; transitions must line up closer than this. */
+    private static final long FRAME_MS = 16;
+    private static final long MASTER_SKEW = 1_000_000;
+    private static final long[] DURATIONS = {5000, 3000, 2000, 7000};
+
+    private SyncMaster master;
+    private PlaybackScheduler masterTimeline;
+
+    @Before
+    public void setUp() throws Exception {
+        LongSupplier masterClock = skewedClock(MASTER_SKEW);
+        masterTimeline = new PlaybackScheduler(1000, 1000);
+        masterTimeline.setDurations(DURATIONS);
+        masterTimeline.startAt(0, masterClock.getAsLong());
+
+        master = new SyncMaster(0, masterClock, new SyncMaster.Timeline() {
+            @Override
+            public long getEpoch() {
+                return masterTimeline.getEpoch();
+            }
+
+            @Override
+            public long getFingerprint() {
+                return 42;
+            }
+        });
+        master.start();
+    }
+
+    @After
+    public void tearDown() {
+        master.close();
+    }
+
+    @Test
+    public void followersAdoptMasterTimeline() throws Exception {
+        long[] skews = {-5000, 123_456, 0};
+        for (long skew : skews) {
+            CountDownLatch locked = new CountDownLatch(1);
+            AtomicLong localEpoch = new AtomicLong();
+            AtomicLong seenFingerprint = new AtomicLong();
+            SyncFollower follower = new SyncFollower("127.0.0.1", master.getPort(), skewedClock(skew), 50,
+                    (epoch, fingerprint) -> {
+                        localEpoch.set(epoch);
+                        seenFingerprint.set(fingerprint);
+                        locked.countDown();
+                    });
+            follower.start();
+            try {
+                assertTrue("Follower never synchronized", locked.await(5, TimeUnit.SECONDS));
+                assertEquals(42, seenFingerprint.get());
+
+                long trueOffset = MASTER_SKEW - skew;
+                assertEquals(trueOffset, follower.getOffset(), 2);
+
+                PlaybackScheduler timeline = new PlaybackScheduler(1000, 1000);
+                timeline.setDurations(DURATIONS);
+                long now = skewedClock(skew).getAsLong();
+                timeline.anchorToClock(now - localEpoch.get(), now);
+                assertSameBoundaries(masterTimeline, timeline, trueOffset, now);
+            } finally {
+                follower.close();
+            }
+        }
+    }
+
+    @Test
+    public void followerInSeparateJvm() throws Exception {
+        long skew = -777_777;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FollowerProcess.class.getName(), String.valueOf(master.getPort()), String.valueOf(skew))
+                .redirectErrorStream(true)
+                .start();
+
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("synced ")) result = line;
+            }
+        }
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        assertNotNull("Follower process did not synchronize", result);
+
+        String[] fields = result.split(" ");
+        long offset = Long.parseLong(fields[1]);
+        long localEpoch = Long.parseLong(fields[2]);
+        long trueOffset = MASTER_SKEW - skew;
+        assertEquals(trueOffset, offset, 2);
+        assertEquals(masterTimeline.getEpoch(), localEpoch + trueOffset, FRAME_MS);
+    }
+
+    /** Compares the next item boundaries of both timelines, mapped onto the master clock. */
+    private static void assertSameBoundaries(PlaybackScheduler master, PlaybackScheduler follower,
+                                             long trueOffset, long followerNow) {
+        long time = followerNow;
+        for (int i = 0; i < 12; i++) {
+            PlaybackScheduler.Slot local = follower.slotAt(time);
+            PlaybackScheduler.Slot remote = master.slotAt(local.getStart() + trueOffset + FRAME_MS);
+            assertEquals(remote.getIndex(), local.getIndex());
+            assertEquals(remote.getStart(), local.getStart() + trueOffset, FRAME_MS);
+            time = local.getEnd();
+        }
+    }
+
+    private static LongSupplier skewedClock(long skew) {
+        return () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + skew;
+    }
+
+    /** Follower entry point for the separate-JVM test: {@code <port> <skewMs>}. */
+    public static class FollowerProcess {
+        public static void main(String[] args) throws Exception {
+            int port = Integer.parseInt(args[0]);
+            long skew = Long.parseLong(args[1]);
+            CountDownLatch locked = new CountDownLatch(1);
+            AtomicLong localEpoch = new AtomicLong();
+            SyncFollower follower = new SyncFollower("127.0.0.1", port, skewedClock(skew), 50,
+                    (epoch, fingerprint) -> {
+                        localEpoch.set(epoch);
+                        locked.countDown();
+                    });
+            follower.start();
+            if (locked.await(5, TimeUnit.SECONDS)) {
+                System.out.println("synced " + follower.getOffset() + " " + localEpoch.get());
+            }
+            follower.close();
+        }
+    }
+}
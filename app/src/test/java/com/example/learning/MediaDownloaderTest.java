@@ -0,0 +1,209 @@
+package com.example.learning;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class MediaDownloaderTest {
+
+    private static final int BODY_SIZE = 512 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private byte[] body;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().readTimeout(5, TimeUnit.SECONDS).build();
+        body = new byte[BODY_SIZE];
+        new Random(42).nextBytes(body);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void resumesWithRangeAfterDroppedConnections() throws Exception {
+        server.setDispatcher(new RangeDispatcher("\"v1\"", 2));
+        File target = new File(temporaryFolder.getRoot(), "video.mp4");
+
+        downloader(3).download(server.url("/video.mp4").toString(), target, null);
+
+        assertArrayEquals(body, readAll(target));
+        assertFalse(new File(target.getPath() + MediaDownloader.PART_SUFFIX).exists());
+        assertFalse(new File(target.getPath() + MediaDownloader.META_SUFFIX).exists());
+
+        RecordedRequest first = server.takeRequest();
+        assertNull(first.getHeader("Range"));
+        RecordedRequest second = server.takeRequest();
+        assertTrue(second.getHeader("Range").startsWith("bytes="));
+        assertFalse(second.getHeader("Range").equals("bytes=0-"));
+        assertEquals("\"v1\"", second.getHeader("If-Range"));
+    }
+
+    @Test
+    public void restartsWhenValidatorChanged() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (requests.getAndIncrement() == 0) {
+                    return fullResponse("\"v1\"").setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+                }
+                // If-Range no longer matches, so the server answers with the whole new entity.
+                return fullResponse("\"v2\"");
+            }
+        });
+        File target = new File(temporaryFolder.getRoot(), "image.jpg");
+
+        downloader(3).download(server.url("/image.jpg").toString(), target, null);
+
+        assertArrayEquals(body, readAll(target));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void partialFileNeverBecomesTarget() throws Exception {
+        server.setDispatcher(new RangeDispatcher("\"v1\"", Integer.MAX_VALUE));
+        File target = new File(temporaryFolder.getRoot(), "broken.mp4");
+
+        try {
+            downloader(2).download(server.url("/broken.mp4").toString(), target, null);
+            fail("Expected the download to give up");
+        } catch (IOException expected) {
+            // Every response is cut off mid-body.
+        }
+
+        assertFalse(target.exists());
+        assertTrue(new File(target.getPath() + MediaDownloader.PART_SUFFIX).length() > 0);
+    }
+
+    @Test
+    public void resumesPreallocatedPartFromCommittedBytes() throws Exception {
+        server.setDispatcher(new RangeDispatcher("\"v1\"", 0));
+        File target = new File(temporaryFolder.getRoot(), "killed.mp4");
+        int committed = 200 * 1024;
+
+        // What a killed process leaves: a part file at full length, good only up to the
+        // committed count, and the meta file that recorded it.
+        byte[] leftover = new byte[BODY_SIZE];
+        System.arraycopy(body, 0, leftover, 0, committed);
+        try (FileOutputStream output = new FileOutputStream(target.getPath() + MediaDownloader.PART_SUFFIX)) {
+            output.write(leftover);
+        }
+        Properties meta = new Properties();
+        meta.setProperty("etag", "\"v1\"");
+        meta.setProperty("length", String.valueOf(BODY_SIZE));
+        meta.setProperty("committed", String.valueOf(committed));
+        try (FileOutputStream output = new FileOutputStream(target.getPath() + MediaDownloader.META_SUFFIX)) {
+            meta.store(output, null);
+        }
+
+        downloader(3).download(server.url("/killed.mp4").toString(), target, null);
+
+        assertArrayEquals(body, readAll(target));
+        assertEquals("bytes=" + committed + "-", server.takeRequest().getHeader("Range"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        File target = new File(temporaryFolder.getRoot(), "missing.jpg");
+
+        try {
+            downloader(5).download(server.url("/missing.jpg").toString(), target, null);
+            fail("Expected a 404");
+        } catch (MediaDownloader.HttpStatusException e) {
+            assertEquals(404, e.getCode());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private MediaDownloader downloader(int maxAttemptsWithoutProgress) {
+        return new MediaDownloader(client, new BandwidthLimiter(BandwidthPolicy.UNLIMITED),
+                maxAttemptsWithoutProgress, 0);
+    }
+
+    private MockResponse fullResponse(String etag) {
+        return new MockResponse()
+                .setHeader("ETag", etag)
+                .setBody(new Buffer().write(body));
+    }
+
+    /** Serves ranges against a fixed entity and cuts the first {@code drops} responses short. */
+    private class RangeDispatcher extends Dispatcher {
+        private final String etag;
+        private final int drops;
+        private final AtomicInteger served = new AtomicInteger();
+
+        RangeDispatcher(String etag, int drops) {
+            this.etag = etag;
+            this.drops = drops;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            MockResponse response;
+            if (range != null && etag.equals(request.getHeader("If-Range"))) {
+                int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                byte[] rest = Arrays.copyOfRange(body, start, body.length);
+                response = new MockResponse()
+                        .setResponseCode(206)
+                        .setHeader("ETag", etag)
+                        .setHeader("Content-Range", "bytes " + start + "-" + (body.length - 1) + "/" + body.length)
+                        .setBody(new Buffer().write(rest));
+            } else {
+                response = fullResponse(etag);
+            }
+            if (served.getAndIncrement() < drops) {
+                response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+            return response;
+        }
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream input = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = input.read(data, offset, data.length - offset);
+                if (read < 0) break;
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.learning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlaybackSchedulerTest {
+
+    private static final long[] DURATIONS = {1000, 2000, 3000};
+
+    @Test
+    public void slotsFollowTheDurationsAcrossCycles() {
+        PlaybackScheduler scheduler = scheduler(0, 200);
+        scheduler.startAt(0, 10_000);
+        assertEquals(6000, scheduler.getCycleLength());
+
+        assertSlot(0, 10_000, 11_000, scheduler.slotAt(10_000));
+        assertSlot(1, 11_000, 13_000, scheduler.slotAt(12_999));
+        assertSlot(2, 13_000, 16_000, scheduler.slotAt(13_000));
+        assertSlot(0, 16_000, 17_000, scheduler.slotAt(16_000));
+        // Before the epoch is the end of the previous cycle.
+        assertSlot(2, 7_000, 10_000, scheduler.slotAt(9_999));
+    }
+
+    @Test
+    public void continueAfterStartsTheFollowingItemAtTheBoundary() {
+        PlaybackScheduler scheduler = scheduler(0, 200);
+
+        scheduler.continueAfter(0, 20_000);
+        assertSlot(1, 20_000, 22_000, scheduler.slotAt(20_000));
+
+        // After the last item the next cycle begins.
+        scheduler.continueAfter(2, 30_000);
+        assertEquals(30_000, scheduler.getEpoch());
+        assertSlot(0, 30_000, 31_000, scheduler.slotAt(30_000));
+        assertFalse(scheduler.isClockAnchored());
+    }
+
+    @Test
+    public void anchorToClockWrapsTheReferenceIntoOneCycle() {
+        PlaybackScheduler first = scheduler(0, 200);
+        PlaybackScheduler second = scheduler(0, 200);
+        long wallClock = 1_700_000_004_500L;
+
+        // Two screens read the same reference time at different monotonic times.
+        first.anchorToClock(wallClock, 50_000);
+        second.anchorToClock(wallClock, 7_000_000);
+        assertTrue(first.isClockAnchored());
+
+        PlaybackScheduler.Slot a = first.slotAt(50_000);
+        PlaybackScheduler.Slot b = second.slotAt(7_000_000);
+        // 1_700_000_004_500 is 500 ms into a 6 s cycle.
+        assertSlot(0, 49_500, 50_500, a);
+        assertEquals(a.getIndex(), b.getIndex());
+        assertEquals(a.getEnd() - 50_000, b.getEnd() - 7_000_000);
+
+        // A reference clock before 1970 still lands inside the cycle.
+        first.anchorToClock(-1, 50_000);
+        assertSlot(2, 47_001, 50_001, first.slotAt(50_000));
+
+        first.continueAfter(0, 60_000);
+        assertFalse(first.isClockAnchored());
+    }
+
+    @Test
+    public void leadFollowsLateHandoffsWithinTheMaximum() {
+        PlaybackScheduler scheduler = scheduler(0, 200);
+        scheduler.startAt(0, 0);
+        PlaybackScheduler.Slot slot = scheduler.slotAt(0);
+
+        scheduler.onShown(slot, 100);
+        assertEquals(25, scheduler.getLeadMs());
+        scheduler.onShown(slot, 100);
+        assertEquals(50, scheduler.getLeadMs());
+
+        // A stall longer than the maximum lead says nothing about decoding.
+        scheduler.onShown(slot, 5_000);
+        assertEquals(50, scheduler.getLeadMs());
+
+        for (int i = 0; i < 50; i++) scheduler.onShown(slot, 200);
+        assertEquals(200, scheduler.getLeadMs());
+        for (int i = 0; i < 50; i++) scheduler.onShown(slot, -200);
+        assertEquals(0, scheduler.getLeadMs());
+    }
+
+    @Test
+    public void nextLooksOneLeadAheadAndSkipsItemsThatAreNearlyOver() {
+        PlaybackScheduler scheduler = scheduler(500, 200);
+        scheduler.startAt(0, 0);
+        scheduler.onShown(scheduler.slotAt(0), 200);
+        long lead = scheduler.getLeadMs();
+
+        assertEquals(1, scheduler.next(1000 - lead).getIndex());
+
+        // Far behind: the item on screen now, shortened to what is left of it.
+        assertSlot(2, 3000, 6000, scheduler.next(4000));
+        // Less than the minimum visible time left: the item after it.
+        assertSlot(0, 6000, 7000, scheduler.next(5700 - lead));
+    }
+
+    @Test
+    public void lateItemsStayUpForTheMinimumVisibleTime() {
+        PlaybackScheduler scheduler = scheduler(500, 200);
+        scheduler.startAt(0, 0);
+        PlaybackScheduler.Slot slot = scheduler.slotAt(0);
+
+        assertEquals(1000, scheduler.advanceDelay(slot, 0));
+        assertEquals(500, scheduler.advanceDelay(slot, 900));
+    }
+
+    @Test
+    public void resumeRestartsTheItemUnlessAnchoredToAClock() {
+        PlaybackScheduler scheduler = scheduler(0, 200);
+        scheduler.startAt(0, 0);
+        assertSlot(1, 90_000, 92_000, scheduler.resume(1, 90_000));
+
+        scheduler.anchorToClock(0, 0);
+        assertSlot(0, 90_000, 91_000, scheduler.resume(1, 90_000));
+    }
+
+    private static PlaybackScheduler scheduler(long minVisibleMs, long maxLeadMs) {
+        PlaybackScheduler scheduler = new PlaybackScheduler(minVisibleMs, maxLeadMs);
+        scheduler.setDurations(DURATIONS);
+        return scheduler;
+    }
+
+    private static void assertSlot(int index, long start, long end, PlaybackScheduler.Slot slot) {
+        assertEquals(slot.toString(), index, slot.getIndex());
+        assertEquals(slot.toString(), start, slot.getStart());
+        assertEquals(slot.toString(), end, slot.getEnd());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.learning;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaylistDiffTest {
+
+    @Test
+    public void emptyPlaylistsHaveNoDifference() {
+        PlaylistDiff diff = PlaylistDiff.compute(Playlist.empty(), Playlist.empty());
+
+        assertTrue(diff.isEmpty());
+        assertTrue(diff.getRemovedUrls().isEmpty());
+    }
+
+    @Test
+    public void fromAndToAnEmptyPlaylist() {
+        Playlist playlist = playlist("a", "b");
+
+        PlaylistDiff first = PlaylistDiff.compute(Playlist.empty(), playlist);
+        assertEquals(Arrays.asList("a", "b"), urls(first.getAdded()));
+        assertTrue(first.getRemoved().isEmpty());
+
+        PlaylistDiff last = PlaylistDiff.compute(playlist, Playlist.empty());
+        assertEquals(Arrays.asList("a", "b"), urls(last.getRemoved()));
+        assertEquals(2, last.getRemovedUrls().size());
+        assertTrue(last.getMovedIds().isEmpty());
+    }
+
+    @Test
+    public void insertionsDoNotMoveTheOtherItems() {
+        PlaylistDiff diff = PlaylistDiff.compute(playlist("a", "b", "c"), playlist("x", "a", "b", "y", "c"));
+
+        assertEquals(Arrays.asList("x", "y"), urls(diff.getAdded()));
+        assertTrue(diff.getRemoved().isEmpty());
+        assertTrue(diff.getMovedIds().isEmpty());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void removalsDoNotMoveTheOtherItems() {
+        PlaylistDiff diff = PlaylistDiff.compute(playlist("a", "b", "c", "d"), playlist("a", "c"));
+
+        assertEquals(Arrays.asList("b", "d"), urls(diff.getRemoved()));
+        assertEquals(2, diff.getRemovedUrls().size());
+        assertTrue(diff.getRemovedUrls().contains("b"));
+        assertTrue(diff.getMovedIds().isEmpty());
+    }
+
+    @Test
+    public void onlyItemsOutsideTheLongestOrderedRunAreMoved() {
+        // Moving the first item to the end moves one item, not the three that shifted.
+        PlaylistDiff toEnd = PlaylistDiff.compute(playlist("a", "b", "c", "d"), playlist("b", "c", "d", "a"));
+        assertEquals(Collections.singletonList("a#0"), toEnd.getMovedIds());
+
+        PlaylistDiff toFront = PlaylistDiff.compute(playlist("a", "b", "c", "d"), playlist("d", "a", "b", "c"));
+        assertEquals(Collections.singletonList("d#0"), toFront.getMovedIds());
+
+        PlaylistDiff reversed = PlaylistDiff.compute(playlist("a", "b", "c"), playlist("c", "b", "a"));
+        assertEquals(2, reversed.getMovedIds().size());
+        assertTrue(reversed.getAdded().isEmpty());
+        assertTrue(reversed.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void repeatedUrlsAreTrackedPerOccurrence() {
+        Playlist old = playlist("x", "y", "x");
+
+        PlaylistDiff reordered = PlaylistDiff.compute(old, playlist("x", "x", "y"));
+        assertEquals(1, reordered.getMovedIds().size());
+        assertTrue(reordered.getAdded().isEmpty());
+        assertTrue(reordered.getRemoved().isEmpty());
+
+        // The second x goes, but the asset is still played by the first one.
+        PlaylistDiff oneFewer = PlaylistDiff.compute(old, playlist("x", "y"));
+        assertEquals(Collections.singletonList("x"), urls(oneFewer.getRemoved()));
+        assertTrue(oneFewer.getRemovedUrls().isEmpty());
+
+        PlaylistDiff oneMore = PlaylistDiff.compute(old, playlist("x", "y", "x", "x"));
+        assertEquals(Collections.singletonList("x"), urls(oneMore.getAdded()));
+        assertTrue(oneMore.getMovedIds().isEmpty());
+    }
+
+    @Test
+    public void durationChangesAreReported() {
+        Playlist old = playlist("a", "b");
+        List<MediaItem> items = new ArrayList<>(old.getItems());
+        items.set(1, new MediaItem("b", MediaType.IMAGE, 9000));
+
+        PlaylistDiff diff = PlaylistDiff.compute(old, new Playlist(items));
+
+        assertEquals(Collections.singletonList("b#0"), diff.getDurationChangedIds());
+        assertTrue(diff.getMovedIds().isEmpty());
+        assertFalse(diff.isEmpty());
+    }
+
+    private static Playlist playlist(String... urls) {
+        List<MediaItem> items = new ArrayList<>();
+        for (String url : urls) items.add(new MediaItem(url, MediaType.IMAGE, 5000));
+        return new Playlist(items);
+    }
+
+    private static List<String> urls(List<MediaItem> items) {
+        List<String> urls = new ArrayList<>();
+        for (MediaItem item : items) urls.add(item.getUrl());
+        return urls;
+    }
+}
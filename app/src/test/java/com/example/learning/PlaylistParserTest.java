@@ -0,0 +1,145 @@
+package com.example.learning;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaylistParserTest {
+
+    @Test
+    public void nullAndEmptyArrayAreEmptyPlaylists() throws Exception {
+        assertTrue(parse("null").isEmpty());
+        assertTrue(parse(" [ ] ").isEmpty());
+    }
+
+    @Test
+    public void emptyBodyIsAnError() {
+        try {
+            parse("");
+            fail("Expected an empty body to be rejected");
+        } catch (IOException expected) {
+            // Keeps the previous snapshot instead of clearing the screen.
+        }
+    }
+
+    @Test
+    public void readsItemsAndAppliesDefaults() throws Exception {
+        List<MediaItem> items = parse("[{\"type\": \"video\", \"url\": \"https://cdn/a.mp4\", \"durationInSeconds\": 12},"
+                + " {\"type\": \"IMAGE\", \"url\": \"https://cdn/b.jpg\"},"
+                + " {\"type\": \"VIDEO\", \"url\": \"https://cdn/c.mp4\", \"durationInSeconds\": null},"
+                + " {\"url\": \"https://cdn/d.png\", \"type\": \"gif\"}]");
+
+        assertEquals(4, items.size());
+        assertItem(items.get(0), "https://cdn/a.mp4", MediaType.VIDEO, 12_000);
+        assertItem(items.get(1), "https://cdn/b.jpg", MediaType.IMAGE, PlaylistParser.DEFAULT_IMAGE_DURATION_MS);
+        assertItem(items.get(2), "https://cdn/c.mp4", MediaType.VIDEO, PlaylistParser.DEFAULT_VIDEO_DURATION_MS);
+        assertItem(items.get(3), "https://cdn/d.png", MediaType.IMAGE, PlaylistParser.DEFAULT_IMAGE_DURATION_MS);
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndEntriesWithoutUrl() throws Exception {
+        List<Integer> indexes = new ArrayList<>();
+        List<MediaItem> items = PlaylistParser.parse(new StringReader("[null,"
+                + " {\"id\": 7, \"tags\": [\"a\", {\"b\": [1, 2]}], \"url\": \"https://cdn/a.jpg\", \"extra\": {\"x\": null}},"
+                + " {\"type\": \"VIDEO\", \"durationInSeconds\": 3},"
+                + " {\"url\": null},"
+                + " {\"url\": \"https://cdn/b.jpg\", \"checksum\": true}]"),
+                (index, item) -> indexes.add(index));
+
+        assertEquals(2, items.size());
+        assertEquals("https://cdn/a.jpg", items.get(0).getUrl());
+        assertEquals("https://cdn/b.jpg", items.get(1).getUrl());
+        // Indexes count the items that were kept, not the array positions.
+        assertEquals(Arrays.asList(0, 1), indexes);
+    }
+
+    @Test
+    public void malformedJsonIsAnError() throws Exception {
+        String[] malformed = {
+                "{\"url\": \"https://cdn/a.jpg\"}",
+                "[{\"url\": \"https://cdn/a.jpg\", \"durationInSeconds\": \"long\"}]",
+                "[\"https://cdn/a.jpg\"]",
+                "[{\"url\": \"https://cdn/a.jpg\"",
+        };
+        for (String json : malformed) {
+            try {
+                parse(json);
+                fail("Expected an error for " + json);
+            } catch (JsonParseException | IOException expected) {
+                // Both leave the previous snapshot in place.
+            }
+        }
+    }
+
+    @Test
+    public void reportsItemsBeforeTheArrayIsComplete() throws Exception {
+        int count = 100_000;
+        GeneratedPlaylist input = new GeneratedPlaylist(count);
+        long[] readWhenFirstItemArrived = {-1};
+
+        List<MediaItem> items = PlaylistParser.parse(input, (index, item) -> {
+            if (index == 0) readWhenFirstItemArrived[0] = input.served;
+        });
+
+        assertEquals(count, items.size());
+        assertEquals("https://cdn/media/99999.jpg", items.get(count - 1).getUrl());
+        assertTrue(readWhenFirstItemArrived[0] > 0);
+        assertTrue("first item after " + readWhenFirstItemArrived[0] + " of " + input.served + " chars",
+                readWhenFirstItemArrived[0] < input.served / 100);
+    }
+
+    private static List<MediaItem> parse(String json) throws IOException {
+        return PlaylistParser.parse(new StringReader(json), null);
+    }
+
+    private static void assertItem(MediaItem item, String url, MediaType type, long durationMs) {
+        assertEquals(url, item.getUrl());
+        assertEquals(type, item.getType());
+        assertEquals(durationMs, item.getDuration());
+    }
+
+    /** A playlist of {@code count} images produced as it is read, like a slow response body. */
+    private static final class GeneratedPlaylist extends Reader {
+        private final int count;
+        private final StringBuilder pending = new StringBuilder("[");
+        private int next;
+        private long served;
+
+        GeneratedPlaylist(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (pending.length() == 0) {
+                if (next > count) return -1;
+                if (next == count) {
+                    pending.append(']');
+                } else {
+                    if (next > 0) pending.append(',');
+                    pending.append("{\"type\":\"IMAGE\",\"url\":\"https://cdn/media/").append(next)
+                            .append(".jpg\",\"durationInSeconds\":5,\"note\":\"unused\"}");
+                }
+                next++;
+            }
+            int n = Math.min(length, pending.length());
+            pending.getChars(0, n, buffer, offset);
+            pending.delete(0, n);
+            served += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
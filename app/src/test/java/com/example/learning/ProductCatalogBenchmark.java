@@ -0,0 +1,160 @@
+package com.example.learning;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the String-keyed {@code HashMap<String, Product>} PlayerActivity used to hold
+ * with {@link BarcodeIndex} and {@link ProductCatalog}: retained heap per SKU, open time
+ * and lookup latency.
+ * <p>
+ * Run with {@code ./gradlew test -Dbenchmark=true -Dbenchmark.skus=1000000}. Give the test
+ * JVM enough heap for the map (about 1 GB for 1M SKUs).
+ */
+public class ProductCatalogBenchmark {
+
+    private static final int LOOKUPS = 2_000_000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private int skus;
+    private String[] barcodes;
+    private String[] queries;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        skus = Integer.getInteger("benchmark.skus", 1_000_000);
+        Random random = new Random(13);
+        barcodes = new String[skus];
+        for (int i = 0; i < skus; i++) {
+            // Unique EAN-13-shaped codes under one country prefix, like a real assortment.
+            barcodes[i] = "387" + String.format("%010d", (long) i * 7919 % 10_000_000_000L);
+        }
+        shuffle(barcodes, random);
+
+        // Scanned codes arrive as fresh Strings: no cached hash, no identity match with the keys.
+        queries = new String[skus];
+        for (int i = 0; i < skus; i++) queries[i] = new String(barcodes[i].toCharArray());
+        shuffle(queries, random);
+    }
+
+    @Test
+    public void compareMapWithIndex() throws Exception {
+        System.out.printf("%-22s %14s %12s %12s%n", "structure", "bytes/SKU", "open ms", "ns/lookup");
+
+        measureMap();
+
+        File dir = temporaryFolder.newFolder();
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            for (int i = 0; i < skus; i++) {
+                catalog.put(barcodes[i], "Artikal " + i, 100 + i % 5000, 1);
+            }
+        }
+
+        long openStart = System.nanoTime();
+        ProductCatalog catalog = new ProductCatalog(dir);
+        long openMs = (System.nanoTime() - openStart) / 1_000_000;
+        // Exact: the index arrays are all the catalog keeps on the heap per SKU.
+        long indexBytes = catalog.getIndexMemoryBytes();
+        assertEquals(skus, catalog.size());
+
+        long priceNanos = time(() -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS; i++) sum += catalog.getPriceCents(queries[i % skus]);
+            return sum;
+        });
+        long getNanos = time(() -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS / 10; i++) sum += catalog.get(queries[i % skus]).getName().length();
+            return sum;
+        });
+        System.out.printf("%-22s %14d %12d %12.1f%n", "ProductCatalog price",
+                indexBytes / skus, openMs, (double) priceNanos / LOOKUPS);
+        System.out.printf("%-22s %14s %12s %12.1f%n", "ProductCatalog get", "", "",
+                (double) getNanos / (LOOKUPS / 10));
+        catalog.close();
+    }
+
+    /** The map and its products become garbage when this returns. */
+    private void measureMap() throws Exception {
+        long before = usedHeap();
+        Map<String, LegacyProduct> map = new HashMap<>();
+        for (int i = 0; i < skus; i++) {
+            // Its own key String per SKU, as when products are read from input.
+            String barcode = new String(barcodes[i].toCharArray());
+            map.put(barcode, new LegacyProduct("Artikal " + i, 1 + i % 5000 / 100.0, barcode));
+        }
+        long mapBytes = usedHeap() - before;
+        long mapNanos = time(() -> {
+            double sum = 0;
+            for (int i = 0; i < LOOKUPS; i++) sum += map.get(queries[i % skus]).price;
+            return (long) sum;
+        });
+        System.out.printf("%-22s %14d %12s %12.1f%n", "HashMap<String,Product>",
+                mapBytes / skus, "-", (double) mapNanos / LOOKUPS);
+    }
+
+    private interface Lookups {
+        long run() throws Exception;
+    }
+
+    /** Best of three, after one warm-up round. */
+    private static long time(Lookups lookups) throws Exception {
+        long sink = lookups.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            sink += lookups.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) System.out.print("");
+        return best;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void shuffle(String[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /** The Product class PlayerActivity kept per SKU before the catalog. */
+    private static final class LegacyProduct {
+        final String name;
+        final double price;
+        final String barcode;
+
+        LegacyProduct(String name, double price, String barcode) {
+            this.name = name;
+            this.price = price;
+            this.barcode = barcode;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.learning;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ProductCatalogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void productsSurviveReopen() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.put("385123456789", "Dukat Mlijeko 1L", 150, 1);
+            catalog.put("0012345678905", "Čokolada", 250, 1);
+            catalog.put("385123456789", "Dukat Mlijeko 1L", 165, 2);
+        }
+
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            assertEquals(2, catalog.size());
+            ProductCatalog.Product milk = catalog.get("385123456789");
+            assertEquals("Dukat Mlijeko 1L", milk.getName());
+            assertEquals(165, milk.getPriceCents());
+            assertEquals("0012345678905", catalog.get("0012345678905").getBarcode());
+            assertEquals("Čokolada", catalog.get("0012345678905").getName());
+            assertNull(catalog.get("12345678905"));
+        }
+    }
+
+    @Test
+    public void replaysRecordsWrittenAfterTheIndex() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File indexFile = new File(dir, ProductCatalog.INDEX_FILE);
+        byte[] staleIndex;
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.put("4006381333931", "Olovka", 90, 1);
+            catalog.flush();
+            staleIndex = Files.readAllBytes(indexFile.toPath());
+            catalog.put("4006381333948", "Gumica", 50, 1);
+        }
+        // Simulates a crash before the next flush: the second record is in the log only.
+        Files.write(indexFile.toPath(), staleIndex);
+
+        ProductCatalog reopened = new ProductCatalog(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(50, reopened.getPriceCents("4006381333948"));
+        reopened.close();
+    }
+
+    @Test
+    public void dropsTornRecordAtEndOfLog() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.put("4006381333931", "Olovka", 90, 1);
+        }
+        File data = new File(dir, ProductCatalog.DATA_FILE);
+        long intact = data.length();
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.put("4006381333948", "Gumica", 50, 1);
+        }
+        new File(dir, ProductCatalog.INDEX_FILE).delete();
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            assertEquals(1, catalog.size());
+            assertEquals(-1, catalog.getPriceCents("4006381333948"));
+            assertEquals(intact, data.length());
+            catalog.put("4006381333948", "Gumica", 55, 2);
+            assertEquals(55, catalog.getPriceCents("4006381333948"));
+        }
+    }
+
+    @Test
+    public void flushCompactsOnceReplacedRecordsDominate() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File data = new File(dir, ProductCatalog.DATA_FILE);
+        int products = 2000;
+        long twoVersions;
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.apply(versions(products, 1));
+            catalog.apply(versions(products, 2));
+            catalog.flush();
+            twoVersions = data.length();
+        }
+        // Half of the log is replaced records: not yet worth a rewrite.
+        assertEquals(twoVersions, data.length());
+
+        try (ProductCatalog catalog = new ProductCatalog(dir)) {
+            catalog.apply(versions(products, 3));
+            catalog.flush();
+            // Only the third version is left: the size of one of the two before.
+            assertTrue(data.length() <= twoVersions / 2 + 8);
+            assertEquals(products, catalog.size());
+            assertEquals("Artikal 7 v3", catalog.get("3870000000007").getName());
+            assertFalse(catalog.compactIfNeeded());
+
+            catalog.put("3870000000007", "Artikal 7 ručno", 5, 4);
+        }
+
+        long compacted = data.length();
+        for (int open = 0; open < 2; open++) {
+            // First from the index written after the compaction, then by replaying the log.
+            try (ProductCatalog catalog = new ProductCatalog(dir)) {
+                assertEquals(products, catalog.size());
+                assertEquals("Artikal 7 ručno", catalog.get("3870000000007").getName());
+                assertEquals(5, catalog.getPriceCents("3870000000007"));
+                assertEquals("Artikal 1999 v3", catalog.get("3870000001999").getName());
+                assertEquals(300 + 1999, catalog.getPriceCents("3870000001999"));
+            }
+            assertEquals(compacted, data.length());
+            new File(dir, ProductCatalog.INDEX_FILE).delete();
+        }
+    }
+
+    @Test
+    public void barcodeKeysKeepLeadingZeros() {
+        assertNotEquals(ProductCatalog.encodeBarcode("0123"), ProductCatalog.encodeBarcode("123"));
+        assertEquals("00000000000017", ProductCatalog.decodeBarcode(ProductCatalog.encodeBarcode("00000000000017")));
+        assertEquals("99999999999999999", ProductCatalog.decodeBarcode(ProductCatalog.encodeBarcode("99999999999999999")));
+        assertEquals(-1, ProductCatalog.encodeBarcode("978-0201"));
+        assertEquals(-1, ProductCatalog.encodeBarcode("123456789012345678"));
+        assertEquals(250, ProductCatalog.parseCents("2,5"));
+        assertEquals("6.05", ProductCatalog.formatCents(605));
+    }
+
+    private static ProductCatalog.Batch versions(int products, int version) {
+        ProductCatalog.Batch batch = new ProductCatalog.Batch();
+        for (int i = 0; i < products; i++) {
+            batch.add(String.valueOf(3870000000000L + i), "Artikal " + i + " v" + version, 100 * version + i, version);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.learning;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Types queries one keystroke at a time against 100k generated products and reports the
+ * latency of each search. Product names are drawn from a Bosnian shop vocabulary, with
+ * the diacritics that customers leave out when typing.
+ * <p>
+ * Run with {@code ./gradlew test -Dbenchmark=true}.
+ */
+public class ProductSearchBenchmark {
+
+    private static final int PRODUCTS = 100_000;
+    private static final long BUDGET_NANOS = 5_000_000;
+
+    private static final String[] BRANDS = {"Milka", "Dukat", "Argeta", "Podravka", "Kraš", "Vegeta",
+            "Cedevita", "Jamnica", "Meggle", "Bajra", "Klas", "Zvijezda", "Fructal", "Sarajevski kiseljak",
+            "Nestlé", "Franck", "Žito", "Vispak", "Natura", "Ledo"};
+    private static final String[] ITEMS = {"Čokolada", "Mlijeko", "Pašteta", "Jogurt", "Kafa", "Čaj",
+            "Sok od jabuke", "Brašno", "Šećer", "Keks", "Napolitanke", "Sir", "Kajmak", "Vrhnje", "Tjestenina",
+            "Riža", "Ulje", "Sirće", "Mineralna voda", "Đumbir", "Grah", "Džem", "Med", "Pahuljice",
+            "Smoki", "Čips", "Bombone", "Kruh", "Kobasica", "Pršut"};
+    private static final String[] SIZES = {"100g", "250g", "500g", "1kg", "0,5L", "1L", "1,5L", "2L", "200ml", "80g"};
+    private static final String[] QUERIES = {"cokolada milka", "pasteta", "mlijeko 1l", "sok od jab", "dumbir",
+            "kras keks", "kafa fra", "sirce", "3850000", "38500001", "smoki", "mineralna", "cips 80g", "dzem"};
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void keystrokeLatency() {
+        Random random = new Random(7);
+        ProductSearch search = new ProductSearch();
+        long buildStart = System.nanoTime();
+        for (int i = 0; i < PRODUCTS; i++) {
+            String name = BRANDS[random.nextInt(BRANDS.length)] + " " + ITEMS[random.nextInt(ITEMS.length)]
+                    + " " + SIZES[random.nextInt(SIZES.length)];
+            search.add(String.valueOf(3850000000000L + i * 7L), name);
+        }
+        long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+
+        // Warm up, then type every query keystroke by keystroke.
+        for (int round = 0; round < 20; round++) {
+            for (String query : QUERIES) {
+                for (int length = 1; length <= query.length(); length++) {
+                    search.search(query.substring(0, length), ProductSearch.DEFAULT_LIMIT);
+                }
+            }
+        }
+        int keystrokes = 0;
+        for (String query : QUERIES) keystrokes += query.length();
+        long[] latencies = new long[keystrokes * 10];
+        int n = 0;
+        for (int round = 0; round < 10; round++) {
+            for (String query : QUERIES) {
+                for (int length = 1; length <= query.length(); length++) {
+                    String typed = query.substring(0, length);
+                    long start = System.nanoTime();
+                    search.search(typed, ProductSearch.DEFAULT_LIMIT);
+                    latencies[n++] = System.nanoTime() - start;
+                }
+            }
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%d products indexed in %d ms%n", PRODUCTS, buildMs);
+        System.out.printf("%d keystrokes: median %.2f ms, p99 %.2f ms, max %.2f ms%n", n,
+                latencies[n / 2] / 1e6, latencies[n * 99 / 100] / 1e6, latencies[n - 1] / 1e6);
+        for (String query : new String[]{"cokolada milka", "pasteta", "38500001"}) {
+            System.out.println(query + " -> " + search.search(query, 3));
+        }
+
+        assertFalse(search.search("cokolada milka", 1).isEmpty());
+        assertTrue("p99 keystroke latency over 5 ms", latencies[n * 99 / 100] < BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.learning;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProductSearchTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ProductSearch sample() {
+        ProductSearch search = new ProductSearch();
+        search.add("123456789012", "Milka Čokolada 100g");
+        search.add("590123412345", "Argeta Pašteta");
+        search.add("385123456789", "Dukat Mlijeko 1L");
+        search.add("3851234567", "Mlijeko u prahu");
+        search.add("385987654321", "Cedevita 250g");
+        search.add("387000000001", "Đumbir čaj");
+        search.add("0385000000017", "Kokos brašno");
+        return search;
+    }
+
+    @Test
+    public void normalizesDiacriticsAndSeparators() {
+        assertEquals("milka cokolada 100g", ProductSearch.normalize("  Milka ČOKOLADA, 100g "));
+        assertEquals("dumbir caj", ProductSearch.normalize("Đumbir-čaj"));
+        assertEquals("pasteta", ProductSearch.normalize("Paštéta"));
+    }
+
+    @Test
+    public void findsNamesWithoutDiacriticsAndWhileTyping() {
+        ProductSearch search = sample();
+        assertEquals("123456789012", search.search("cokolada", 5).get(0));
+        assertEquals("590123412345", search.search("Pasteta", 5).get(0));
+        assertEquals("590123412345", search.search("pašt", 5).get(0));
+        assertEquals("387000000001", search.search("dum", 5).get(0));
+        assertEquals("Đumbir čaj", search.getName("387000000001"));
+        assertNull(search.getName("387000000002"));
+        // One letter missing.
+        assertEquals("123456789012", search.search("cokolda", 5).get(0));
+        assertTrue(search.search("xyzq", 5).isEmpty());
+    }
+
+    @Test
+    public void ranksNamesStartingWithTheQueryFirst() {
+        List<String> results = sample().search("mlijeko", 5);
+        assertEquals(Arrays.asList("3851234567", "385123456789"), results);
+    }
+
+    @Test
+    public void matchesBarcodePrefixesShortestFirst() {
+        ProductSearch search = sample();
+        assertEquals(Arrays.asList("3851234567", "385123456789", "385987654321"), search.search("385", 5));
+        assertEquals(Arrays.asList("3851234567", "385123456789"), search.search("3851234567", 5));
+        assertEquals(Arrays.asList("0385000000017"), search.search("0385", 5));
+        assertEquals(2, search.search("385", 2).size());
+        // Digits that are no barcode prefix still match names.
+        assertEquals("123456789012", search.search("100", 5).get(0));
+    }
+
+    @Test
+    public void followsCatalogUpdates() throws Exception {
+        try (ProductCatalog catalog = new ProductCatalog(temporaryFolder.newFolder())) {
+            catalog.put("385123456789", "Dukat Mlijeko 1L", 150, 1);
+            ProductSearch search = new ProductSearch();
+            catalog.addListener(search);
+            catalog.forEach((barcode, name, priceCents) -> search.add(barcode, name));
+            assertEquals(1, search.size());
+
+            catalog.put("401440033982", "Nutella 350g", 580, 1);
+            ProductCatalog.Batch batch = new ProductCatalog.Batch();
+            batch.add("385123456789", "Meggle Mlijeko 1L", 160, 2);
+            batch.add("400590003078", "Nescafe Classic 100g", 620, 1);
+            catalog.apply(batch);
+
+            assertEquals(3, search.size());
+            assertEquals("401440033982", search.search("nutel", 5).get(0));
+            assertEquals("385123456789", search.search("meggle", 5).get(0));
+            assertEquals("Meggle Mlijeko 1L", search.getName("385123456789"));
+            assertEquals("400590003078", search.search("4005", 5).get(0));
+        }
+    }
+}
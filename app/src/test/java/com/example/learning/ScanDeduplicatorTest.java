@@ -0,0 +1,32 @@
+package com.example.learning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanDeduplicatorTest {
+
+    @Test
+    public void suppressesCodeWhileItStaysInView() {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(1500);
+        assertTrue(deduplicator.accept("385123456789", 0));
+        // Decoded on every frame while held in front of the camera.
+        for (long t = 100; t <= 5000; t += 100) {
+            assertFalse(deduplicator.accept("385123456789", t));
+        }
+        assertTrue(deduplicator.accept("401440033982", 5100));
+        // Out of view for the whole window: scanned again.
+        assertTrue(deduplicator.accept("385123456789", 6500));
+    }
+
+    @Test
+    public void alternatingProductsAreEachReportedOnce() {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(1500);
+        assertTrue(deduplicator.accept("1", 0));
+        assertTrue(deduplicator.accept("2", 300));
+        assertFalse(deduplicator.accept("1", 600));
+        assertFalse(deduplicator.accept("2", 900));
+        deduplicator.reset();
+        assertTrue(deduplicator.accept("1", 1000));
+    }
+}
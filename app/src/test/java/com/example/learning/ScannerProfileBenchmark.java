@@ -0,0 +1,196 @@
+package com.example.learning;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs each {@link ScannerProfile} over a set of camera-sized frames and reports frames
+ * and successful decodes per second. Frames are read from {@code benchmark.frames}, a
+ * folder of PNG or JPEG images, or generated: retail barcodes near the center of a
+ * 1280x720 frame with varying amounts of noise, plus frames with no barcode, which is
+ * what a live camera mostly sees.
+ * <p>
+ * Run with {@code ./gradlew test -Dbenchmark=true -Dbenchmark.frames=/path/to/frames}.
+ */
+public class ScannerProfileBenchmark {
+
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    private static final int GENERATED_FRAMES = 60;
+    private static final long RUN_NANOS = 3_000_000_000L;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void compareProfiles() throws Exception {
+        String folder = System.getProperty("benchmark.frames");
+        List<LuminanceSource> frames = folder != null ? loadFrames(new File(folder)) : generateFrames();
+        assumeTrue("No frames in " + folder, !frames.isEmpty());
+
+        List<ScannerProfile> profiles = Arrays.asList(
+                ScannerProfile.ALL_FORMATS,
+                new ScannerProfile("retail-full", ScannerProfile.RETAIL.getFormats(), 1f, 1f, 0),
+                new ScannerProfile("retail-roi", ScannerProfile.RETAIL.getFormats(),
+                        ScannerProfile.RETAIL.getRoiWidth(), ScannerProfile.RETAIL.getRoiHeight(), 0),
+                ScannerProfile.RETAIL);
+
+        System.out.println(frames.size() + " frames from " + (folder != null ? folder : "generator"));
+        System.out.printf("%-12s %10s %10s %8s %10s%n", "profile", "frames/s", "decodes/s", "hit %", "fallback");
+        double allFormatsFps = 0;
+        double retailFps = 0;
+        for (ScannerProfile profile : profiles) {
+            run(profile, frames, RUN_NANOS / 5);
+            Run run = run(profile, frames, RUN_NANOS);
+            double seconds = run.nanos / 1e9;
+            System.out.printf("%-12s %10.1f %10.1f %8.1f %10d%n", profile.getName(), run.frames / seconds,
+                    run.decodes / seconds, 100.0 * run.decodes / run.frames, run.thoroughDecodes);
+            if (profile == ScannerProfile.ALL_FORMATS) allFormatsFps = run.frames / seconds;
+            if (profile == ScannerProfile.RETAIL) retailFps = run.frames / seconds;
+            assertTrue(profile.getName() + " decoded nothing", run.decodes > 0);
+        }
+        System.out.printf("retail/all frame rate: %.1fx%n", retailFps / allFormatsFps);
+    }
+
+    private static final class Run {
+        long frames;
+        long decodes;
+        long nanos;
+        int thoroughDecodes;
+    }
+
+    private static Run run(ScannerProfile profile, List<LuminanceSource> frames, long duration) {
+        ProfileReader reader = new ProfileReader(profile, null);
+        Run run = new Run();
+        long start = System.nanoTime();
+        do {
+            for (LuminanceSource frame : frames) {
+                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(profile.crop(frame)));
+                try {
+                    Result result = reader.decode(bitmap);
+                    if (result != null) run.decodes++;
+                } catch (ReaderException ignored) {
+                    // A frame without a readable code.
+                } finally {
+                    reader.reset();
+                }
+                run.frames++;
+            }
+            run.nanos = System.nanoTime() - start;
+        } while (run.nanos < duration);
+        run.thoroughDecodes = reader.getThoroughDecodes();
+        return run;
+    }
+
+    /** Images as the luminance plane a camera delivers, so crops cost what they do on a device. */
+    private static List<LuminanceSource> loadFrames(File folder) throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.toLowerCase().matches(".*\\.(png|jpe?g)"));
+        List<LuminanceSource> frames = new ArrayList<>();
+        if (files == null) return frames;
+        Arrays.sort(files);
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) continue;
+            int width = image.getWidth();
+            int height = image.getHeight();
+            byte[] luminance = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    int gray = (306 * ((rgb >> 16) & 0xff) + 601 * ((rgb >> 8) & 0xff) + 117 * (rgb & 0xff)) >> 10;
+                    luminance[y * width + x] = (byte) gray;
+                }
+            }
+            frames.add(new PlanarYUVLuminanceSource(luminance, width, height, 0, 0, width, height, false));
+        }
+        return frames;
+    }
+
+    private static List<LuminanceSource> generateFrames() throws WriterException {
+        Random random = new Random(42);
+        Map<BarcodeFormat, String> samples = new EnumMap<>(BarcodeFormat.class);
+        samples.put(BarcodeFormat.EAN_13, "3856007900013");
+        samples.put(BarcodeFormat.EAN_8, "96385074");
+        samples.put(BarcodeFormat.UPC_A, "036000291452");
+        samples.put(BarcodeFormat.UPC_E, "01234565");
+        samples.put(BarcodeFormat.CODE_128, "CIJENA-4711");
+        List<BarcodeFormat> formats = new ArrayList<>(EnumSet.copyOf(samples.keySet()));
+
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 10);
+        MultiFormatWriter writer = new MultiFormatWriter();
+        List<LuminanceSource> frames = new ArrayList<>();
+        for (int i = 0; i < GENERATED_FRAMES; i++) {
+            // From a clean, well-lit label to a grainy one in poor light.
+            int sensorNoise = 3 + random.nextInt(12);
+            byte[] frame = noise(random, sensorNoise);
+            // Two thirds of the frames show a product; the rest are empty shelf or hands.
+            if (i % 3 != 2) {
+                BarcodeFormat format = formats.get(i % formats.size());
+                int width = 280 + random.nextInt(240);
+                BitMatrix code = writer.encode(samples.get(format), format, width, 100 + random.nextInt(80), hints);
+                int left = (FRAME_WIDTH - code.getWidth()) / 2 + random.nextInt(201) - 100;
+                int top = (FRAME_HEIGHT - code.getHeight()) / 2 + random.nextInt(81) - 40;
+                draw(frame, code, left, top, random, sensorNoise * 3 / 2);
+            }
+            frames.add(new PlanarYUVLuminanceSource(frame, FRAME_WIDTH, FRAME_HEIGHT,
+                    0, 0, FRAME_WIDTH, FRAME_HEIGHT, false));
+        }
+        Collections.shuffle(frames, random);
+        return frames;
+    }
+
+    /** A lit-from-one-side background with sensor noise. */
+    private static byte[] noise(Random random, int sigma) {
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                int light = 90 + 80 * x / FRAME_WIDTH + (int) (random.nextGaussian() * sigma);
+                frame[y * FRAME_WIDTH + x] = (byte) Math.max(0, Math.min(255, light));
+            }
+        }
+        return frame;
+    }
+
+    /** A printed label: dark bars on light paper, low contrast and noisy. */
+    private static void draw(byte[] frame, BitMatrix code, int left, int top, Random random, int sigma) {
+        for (int y = 0; y < code.getHeight(); y++) {
+            for (int x = 0; x < code.getWidth(); x++) {
+                int base = code.get(x, y) ? 60 : 200;
+                int value = base + (int) (random.nextGaussian() * sigma);
+                frame[(top + y) * FRAME_WIDTH + left + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.learning;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    @Test
+    public void zeroRateNeverWaits() throws Exception {
+        TokenBucket bucket = new TokenBucket(0);
+        long elapsed = timeMillis(() -> bucket.acquire(Long.MAX_VALUE / 2));
+        assertTrue("waited " + elapsed + " ms", elapsed < 50);
+        assertEquals(0, new TokenBucket(-5).getRate());
+    }
+
+    @Test
+    public void readsArePacedToTheRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(100_000);
+        // The bucket starts empty: 4 x 10 KB at 100 KB/s take about 400 ms.
+        long elapsed = timeMillis(() -> {
+            for (int i = 0; i < 4; i++) bucket.acquire(10_000);
+        });
+        assertTrue("took " + elapsed + " ms", elapsed >= 350 && elapsed < 1000);
+    }
+
+    @Test
+    public void idleTimeBuildsAtMostOneSecondOfBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(20_000);
+        Thread.sleep(1500);
+
+        long burst = timeMillis(() -> bucket.acquire(20_000));
+        assertTrue("burst waited " + burst + " ms", burst < 100);
+        // Without the cap the 1.5 s of idle time would cover this as well.
+        long paced = timeMillis(() -> bucket.acquire(10_000));
+        assertTrue("took " + paced + " ms", paced >= 400);
+    }
+
+    @Test
+    public void lowerRateDropsSavedTokens() throws Exception {
+        TokenBucket bucket = new TokenBucket(1_000_000);
+        Thread.sleep(1100);
+        bucket.setRate(10_000);
+        assertEquals(10_000, bucket.getRate());
+
+        long elapsed = timeMillis(() -> bucket.acquire(15_000));
+        assertTrue("took " + elapsed + " ms", elapsed >= 400);
+    }
+
+    @Test
+    public void interruptAbortsTheWait() throws Exception {
+        TokenBucket bucket = new TokenBucket(1_000);
+        Thread.currentThread().interrupt();
+        try {
+            bucket.acquire(10_000);
+            fail("Expected the throttled read to be interrupted");
+        } catch (InterruptedIOException expected) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long timeMillis(Action action) throws Exception {
+        long start = System.nanoTime();
+        action.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}